@@ -1,11 +1,13 @@
 package com.umasuo.product.application.dto.mapper;
 
+import com.umasuo.product.application.dto.ProductDataView;
 import com.umasuo.product.application.dto.ProductDraft;
 import com.umasuo.product.application.dto.ProductView;
 import com.umasuo.product.domain.model.Product;
 import com.umasuo.product.infrastructure.enums.ProductStatus;
 
 import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.BeanUtils;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -82,6 +84,22 @@ public final class ProductMapper {
     return view;
   }
 
+  /**
+   * Copy the cached view with it's data definitions, the cached view is not changed.
+   *
+   * @param product the product view without data definitions
+   * @param dataDefinitions the data definitions
+   * @return the product view
+   */
+  public static ProductView toView(ProductView product, List<ProductDataView> dataDefinitions) {
+    ProductView view = new ProductView();
+
+    BeanUtils.copyProperties(product, view);
+    view.setDataDefinitions(dataDefinitions);
+
+    return view;
+  }
+
   /**
    * convert list build model to list build views.
    *
@@ -0,0 +1,133 @@
+package com.umasuo.product.application.rest;
+
+import com.google.common.collect.Maps;
+import com.umasuo.product.application.service.CacheApplication;
+import com.umasuo.product.application.service.OutboxWorker;
+import com.umasuo.product.application.service.RestClient;
+import com.umasuo.product.infrastructure.Router;
+
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * Controller class for runtime metrics, used by admin to size caches and clients.
+ */
+@CrossOrigin
+@RestController
+public class MetricsController {
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOG = LoggerFactory.getLogger(MetricsController.class);
+
+  /**
+   * CacheApplication.
+   */
+  @Autowired
+  private transient CacheApplication cacheApplication;
+
+  /**
+   * RestClient.
+   */
+  @Autowired
+  private transient RestClient restClient;
+
+  /**
+   * OutboxWorker.
+   */
+  @Autowired
+  private transient OutboxWorker outboxWorker;
+
+  /**
+   * Connection pool of RestClient.
+   */
+  @Autowired
+  private transient PoolingHttpClientConnectionManager httpConnectionManager;
+
+  /**
+   * Connection pool of the async calls of RestClient.
+   */
+  @Autowired
+  private transient PoolingNHttpClientConnectionManager httpAsyncConnectionManager;
+
+  /**
+   * Gets metrics.
+   *
+   * @return the metrics
+   */
+  @GetMapping(Router.ADMIN_PRODUCT_METRICS)
+  public Map<String, Object> getMetrics() {
+    LOG.info("Enter.");
+
+    Map<String, Object> result = Maps.newLinkedHashMap();
+
+    result.put("localCache", cacheApplication.getLocalCacheStats());
+    result.put("cacheWrite", cacheApplication.getCacheWriteStats());
+    result.put("httpPool", getHttpPoolStats());
+    result.put("httpAsyncPool", getHttpAsyncPoolStats());
+    result.put("dataDefinition", restClient.getStats());
+    result.put("outbox", outboxWorker.getStats());
+
+    LOG.info("Exit. metrics: {}.", result);
+    return result;
+  }
+
+  /**
+   * Gets occupancy of the http connection pool, in total and for each route.
+   *
+   * @return the http pool stats
+   */
+  private Map<String, Object> getHttpPoolStats() {
+    Map<String, Object> result = toMap(httpConnectionManager.getTotalStats());
+
+    Map<String, Object> routes = Maps.newLinkedHashMap();
+    httpConnectionManager.getRoutes().stream().forEach(route -> routes.put(
+        route.getTargetHost().toString(), toMap(httpConnectionManager.getStats(route))));
+    result.put("routes", routes);
+
+    return result;
+  }
+
+  /**
+   * Gets occupancy of the async http connection pool, in total and for each route.
+   *
+   * @return the async http pool stats
+   */
+  private Map<String, Object> getHttpAsyncPoolStats() {
+    Map<String, Object> result = toMap(httpAsyncConnectionManager.getTotalStats());
+
+    Map<String, Object> routes = Maps.newLinkedHashMap();
+    httpAsyncConnectionManager.getRoutes().stream().forEach(route -> routes.put(
+        route.getTargetHost().toString(), toMap(httpAsyncConnectionManager.getStats(route))));
+    result.put("routes", routes);
+
+    return result;
+  }
+
+  /**
+   * Convert pool stats to map.
+   *
+   * @param stats the stats
+   * @return the map
+   */
+  private Map<String, Object> toMap(PoolStats stats) {
+    Map<String, Object> result = Maps.newLinkedHashMap();
+
+    result.put("leased", stats.getLeased());
+    result.put("available", stats.getAvailable());
+    result.put("pending", stats.getPending());
+    result.put("max", stats.getMax());
+
+    return result;
+  }
+}
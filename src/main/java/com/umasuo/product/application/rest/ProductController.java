@@ -1,5 +1,6 @@
 package com.umasuo.product.application.rest;
 
+import com.umasuo.exception.ParametersException;
 import com.umasuo.product.application.dto.ProductDraft;
 import com.umasuo.product.application.dto.ProductView;
 import com.umasuo.product.application.service.ProductCommandApplication;
@@ -143,16 +144,30 @@ public class ProductController {
   }
 
   /**
-   * Get all developer's product by developer id.
+   * Get all developer's product by developer id, sorted by createdAt desc.
+   * 同时传入page和size时只返回该页的产品，只传入其中一个时返回400。
    *
    * @param developerId String
+   * @param page the page number, start from 0
+   * @param size the page size
    * @return list build product view
    */
   @GetMapping(Router.PRODUCT_ROOT)
-  public List<ProductView> getByDeveloperId(@RequestHeader String developerId) {
-    LOG.info("Enter. developerId: {}.", developerId);
-
-    List<ProductView> views = queryApplication.getAllByDeveloperId(developerId);
+  public List<ProductView> getByDeveloperId(@RequestHeader String developerId,
+      @RequestParam(required = false) Integer page, @RequestParam(required = false) Integer size) {
+    LOG.info("Enter. developerId: {}, page: {}, size: {}.", developerId, page, size);
+
+    if ((page == null) != (size == null)) {
+      LOG.debug("Page and size should be given together, page: {}, size: {}.", page, size);
+      throw new ParametersException("Page and size should be given together");
+    }
+
+    List<ProductView> views;
+    if (page != null) {
+      views = queryApplication.getAllByDeveloperId(developerId, page, size);
+    } else {
+      views = queryApplication.getAllByDeveloperId(developerId);
+    }
 
     LOG.info("Exit. viewsSize: {}.", views.size());
     LOG.trace("views: {}.", views);
@@ -1,34 +1,71 @@
 package com.umasuo.product.application.service;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.umasuo.product.application.dto.CommonDataView;
+import com.umasuo.product.application.dto.ProductDataView;
 import com.umasuo.product.application.dto.ProductTypeView;
 import com.umasuo.product.application.dto.ProductView;
+import com.umasuo.product.infrastructure.cache.CacheEntry;
+import com.umasuo.product.infrastructure.cache.CoalescingExecutor;
+import com.umasuo.product.infrastructure.cache.ProductTypeCatalog;
+import com.umasuo.product.infrastructure.util.PageUtils;
 import com.umasuo.product.infrastructure.util.RedisUtils;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations.TypedTuple;
 import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
 
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
+import javax.annotation.PostConstruct;
+
 /**
  * 用于处理缓存。
+ * Redis前面有一层进程内的本地缓存，任何节点修改缓存时通过Redis pub/sub通知所有节点删除本地缓存。
+ * Product和它的数据定义分开缓存，缓存中的ProductView不包含数据定义。
  */
 @Service
-public class CacheApplication {
+public class CacheApplication implements MessageListener {
 
   /**
    * Logger.
    */
   private static final Logger LOG = LoggerFactory.getLogger(CacheApplication.class);
 
+  /**
+   * Generation keys expire after one day without change.
+   */
+  private static final long GENERATION_EXPIRE_SECONDS = TimeUnit.DAYS.toSeconds(1);
+
   /**
    * The redis template.
    */
@@ -36,98 +73,427 @@ public class CacheApplication {
   private transient RedisTemplate redisTemplate;
 
   /**
-   * Gets all ProductType.
+   * The string redis template, used to publish invalidation messages.
+   */
+  @Autowired
+  private transient StringRedisTemplate stringRedisTemplate;
+
+  /**
+   * Max size of each local cache.
+   */
+  @Value("${cache.local.maximum-size:1000}")
+  private transient long localMaximumSize;
+
+  /**
+   * Local cache entries expire after this seconds even if no invalidation message arrives.
+   */
+  @Value("${cache.local.expire-seconds:60}")
+  private transient long localExpireSeconds;
+
+  /**
+   * Negative entries (developer without product, product not exist) expire after this seconds.
+   */
+  @Value("${cache.negative.expire-seconds:60}")
+  private transient long negativeExpireSeconds;
+
+  /**
+   * Cached products are served but refreshed in background after this seconds.
+   */
+  @Value("${cache.product.soft-expire-seconds:300}")
+  private transient long softExpireSeconds;
+
+  /**
+   * Cached products are removed after this seconds, and loaded synchronously on next read.
+   */
+  @Value("${cache.product.hard-expire-seconds:3600}")
+  private transient long hardExpireSeconds;
+
+  /**
+   * Cached ProductType are removed after this seconds, and loaded synchronously on next read.
+   */
+  @Value("${cache.product-type.expire-seconds:86400}")
+  private transient long productTypeExpireSeconds;
+
+  /**
+   * Max products read or written in one redis command.
+   */
+  @Value("${cache.product.chunk-size:500}")
+  private transient int chunkSize;
+
+  /**
+   * Max size of the last known good data definitions.
+   */
+  @Value("${cache.last-known.maximum-size:10000}")
+  private transient long lastKnownMaximumSize;
+
+  /**
+   * Executor for cache writes.
+   */
+  @Autowired
+  @Qualifier("cacheWriteExecutor")
+  private transient TaskExecutor cacheWriteExecutor;
+
+  /**
+   * Writes cache fills in background, coalesces pending fills of the same key.
+   */
+  private transient CoalescingExecutor cacheWriter;
+
+  /**
+   * Local cache for products, key is developerId.
+   */
+  private transient Cache<String, CacheEntry<List<ProductView>>> localProducts;
+
+  /**
+   * Local cache for single product, key is developerId:productId.
+   */
+  private transient Cache<String, ProductView> localProduct;
+
+  /**
+   * Local cache for data definitions of single product, key is developerId:productId.
+   */
+  private transient Cache<String, CacheEntry<List<ProductDataView>>> localProductData;
+
+  /**
+   * Local snapshot of all product types.
+   */
+  private final transient AtomicReference<ProductTypeCatalog> localProductTypes =
+      new AtomicReference<>();
+
+  /**
+   * Last data definitions successfully read from data-definition, key is developerId:productId.
+   * 只在data-definition不可用时使用，不会过期，也不会写入Redis。
+   */
+  private transient Cache<String, List<ProductDataView>> lastKnownProductData;
+
+  /**
+   * Last platform data successfully read from data-definition, key is productTypeId.
+   */
+  private final transient AtomicReference<Map<String, List<CommonDataView>>>
+      lastKnownProductTypeData = new AtomicReference<>(Maps.newHashMap());
+
+  /**
+   * Build local caches and the cache writer.
+   */
+  @PostConstruct
+  public void init() {
+    cacheWriter = new CoalescingExecutor(cacheWriteExecutor);
+
+    localProducts = CacheBuilder.newBuilder()
+        .maximumSize(localMaximumSize)
+        .expireAfterWrite(localExpireSeconds, TimeUnit.SECONDS)
+        .recordStats()
+        .build();
+
+    localProduct = CacheBuilder.newBuilder()
+        .maximumSize(localMaximumSize)
+        .expireAfterWrite(localExpireSeconds, TimeUnit.SECONDS)
+        .recordStats()
+        .build();
+
+    localProductData = CacheBuilder.newBuilder()
+        .maximumSize(localMaximumSize)
+        .expireAfterWrite(localExpireSeconds, TimeUnit.SECONDS)
+        .recordStats()
+        .build();
+
+    lastKnownProductData = CacheBuilder.newBuilder()
+        .maximumSize(lastKnownMaximumSize)
+        .recordStats()
+        .build();
+  }
+
+  /**
+   * Gets ProductType catalog, from local snapshot first and then from redis.
    *
-   * @return the all product type
+   * @return the product type catalog, null if not cached
    */
-  public List<ProductTypeView> getAllProductType() {
+  public ProductTypeCatalog getProductTypeCatalog() {
     LOG.debug("Enter.");
-    List<ProductTypeView> result = Lists.newArrayList();
 
-    Map<String, ProductTypeView> cacheProductTypes =
-        redisTemplate.opsForHash().entries(RedisUtils.PRODUCT_TYPE_KEY);
+    ProductTypeCatalog result = localProductTypes.get();
 
-    if (!CollectionUtils.isEmpty(cacheProductTypes)) {
-      result = cacheProductTypes.values().stream()
-          .sorted((view1, view2) -> view2.getCreatedAt().compareTo(view1.getCreatedAt()))
-          .collect(Collectors.toList());
+    if (result != null) {
+      LOG.debug("Exit. local snapshot hit.");
+      return result;
+    }
+
+    result = readProductTypes();
+
+    if (result == null) {
+      LOG.debug("Exit. productType not cached or can not be read.");
+      return null;
     }
 
-    LOG.trace("ProductType: {}.", result);
-    LOG.debug("Exit. productType size: {}.", result.size());
+    localProductTypes.compareAndSet(null, result);
+
+    LOG.debug("Exit. productType size: {}.", result.getAll().size());
     return result;
   }
 
   /**
-   * Cache ProductType.
+   * Gets the cache generation of ProductType, read it before loading from database.
+   *
+   * @return the generation, 0 if the product types have never been changed
+   */
+  public long getProductTypeGeneration() {
+    return readGeneration(RedisUtils.PRODUCT_TYPE_GENERATION_KEY);
+  }
+
+  /**
+   * Replace the cached ProductType with one rebuilt after a change, and swap the local snapshot.
+   * 新值先写到临时key，再在同一个事务里RENAME覆盖旧key，读请求不会看到空缓存或新旧混合的值。
+   * 同时增加版本号，修改之前开始的加载不会再覆盖新值。其他节点收到通知后从Redis重新加载本地快照。
    *
    * @param productTypeViews the product type views
+   * @return the product type catalog
    */
-  @Async
-  public void cacheProductType(List<ProductTypeView> productTypeViews) {
+  public ProductTypeCatalog replaceProductTypes(List<ProductTypeView> productTypeViews) {
     LOG.debug("Enter. productType size: {}.", productTypeViews.size());
 
-    Map<String, ProductTypeView> cacheProductTypes = Maps.newHashMap();
-    productTypeViews.stream().forEach(view -> cacheProductTypes.put(view.getId(), view));
-    redisTemplate.opsForHash().putAll(RedisUtils.PRODUCT_TYPE_KEY, cacheProductTypes);
+    ProductTypeCatalog catalog = ProductTypeCatalog.of(productTypeViews);
 
-    LOG.debug("Exit. cache done.");
+    redisTemplate.execute(new SessionCallback<Object>() {
+      @Override
+      public Object execute(RedisOperations operations) throws DataAccessException {
+        operations.multi();
+        increaseGenerationKey(operations, RedisUtils.PRODUCT_TYPE_GENERATION_KEY);
+        writeProductTypes(operations, productTypeViews);
+        return operations.exec();
+      }
+    });
+
+    localProductTypes.set(catalog);
+    stringRedisTemplate.convertAndSend(RedisUtils.PRODUCT_TYPE_INVALIDATION_CHANNEL,
+        RedisUtils.PRODUCT_TYPE_KEY);
+
+    LOG.debug("Exit. replace done.");
+    return catalog;
   }
 
   /**
-   * Delete ProductType from cache.
+   * Cache the ProductType loaded on a cache miss, only if they have not been changed since the
+   * generation was read.
+   * 加载期间产品类型被修改时放弃写入，避免旧值覆盖replaceProductTypes刚写入的新值。
+   *
+   * @param productTypeViews the product type views
+   * @param generation the generation read before loading the product types
+   * @return the product type catalog
    */
-  @Async
-  public void deleteProductTypes() {
+  public ProductTypeCatalog fillProductTypes(List<ProductTypeView> productTypeViews,
+      long generation) {
+    LOG.debug("Enter. productType size: {}, generation: {}.", productTypeViews.size(),
+        generation);
+
+    ProductTypeCatalog catalog = ProductTypeCatalog.of(productTypeViews);
+
+    boolean written = writeIfGenerationKey(RedisUtils.PRODUCT_TYPE_GENERATION_KEY, generation,
+        operations -> writeProductTypes(operations, productTypeViews));
+
+    if (written) {
+      localProductTypes.set(catalog);
+      stringRedisTemplate.convertAndSend(RedisUtils.PRODUCT_TYPE_INVALIDATION_CHANNEL,
+          RedisUtils.PRODUCT_TYPE_KEY);
+    }
+
+    LOG.debug("Exit. written: {}.", written);
+    return catalog;
+  }
+
+  /**
+   * Delete the cached ProductType, used when the rebuilt catalog is degraded and can not be cached.
+   * 同时增加版本号，下一个读请求会重新从数据库和data-definition加载。
+   */
+  public void evictProductTypes() {
     LOG.debug("Enter.");
 
-    redisTemplate.delete(RedisUtils.PRODUCT_TYPE_KEY);
+    redisTemplate.execute(new SessionCallback<Object>() {
+      @Override
+      public Object execute(RedisOperations operations) throws DataAccessException {
+        operations.multi();
+        increaseGenerationKey(operations, RedisUtils.PRODUCT_TYPE_GENERATION_KEY);
+        operations.delete(RedisUtils.PRODUCT_TYPE_KEY);
+        return operations.exec();
+      }
+    });
 
-    LOG.debug("Exit. delete done.");
+    localProductTypes.set(null);
+    stringRedisTemplate.convertAndSend(RedisUtils.PRODUCT_TYPE_INVALIDATION_CHANNEL,
+        RedisUtils.PRODUCT_TYPE_KEY);
+
+    LOG.debug("Exit. evict done.");
   }
 
   /**
-   * Gets products by developerId.
+   * Remember platform data successfully read from data-definition.
+   *
+   * @param productTypeData the platform data, key is productTypeId
+   */
+  public void rememberProductTypeData(Map<String, List<CommonDataView>> productTypeData) {
+    lastKnownProductTypeData.set(productTypeData);
+  }
+
+  /**
+   * Gets the last platform data successfully read from data-definition.
+   *
+   * @return the platform data, key is productTypeId, empty if never read
+   */
+  public Map<String, List<CommonDataView>> getLastKnownProductTypeData() {
+    return lastKnownProductTypeData.get();
+  }
+
+  /**
+   * Gets products by developerId, sorted by createdAt desc.
    *
    * @param developerId the developer id
-   * @return the products
+   * @return the products, empty if the developer has no product, null if not cached
    */
-  public List<ProductView> getProducts(String developerId) {
+  public CacheEntry<List<ProductView>> getProducts(String developerId) {
     LOG.debug("Enter. developerId: {}.", developerId);
 
-    List<ProductView> result = Lists.newArrayList();
+    CacheEntry<List<ProductView>> result = localProducts.getIfPresent(developerId);
 
-    String key = String.format(RedisUtils.PRODUCT_KEY_FORMAT, developerId);
-    Map<String, ProductView> cacheProducts = redisTemplate.opsForHash().entries(key);
+    if (result != null) {
+      LOG.debug("Exit. local cache hit, products size: {}.", result.getValue().size());
+      return result;
+    }
 
-    if (!CollectionUtils.isEmpty(cacheProducts)) {
-      result = cacheProducts.values().stream()
-          .sorted((view1, view2) -> view2.getCreatedAt().compareTo(view1.getCreatedAt()))
-          .collect(Collectors.toList());
+    CacheEntry<List<ProductView>> cacheProducts = readProducts(developerId, 0, -1);
+
+    if (cacheProducts != null) {
+      result = cacheProducts.withValue(ImmutableList.copyOf(cacheProducts.getValue()));
+      localProducts.put(developerId, result);
     }
 
     LOG.trace("Products: {}.", result);
-    LOG.debug("Exit. products size: {}.", result.size());
+    LOG.debug("Exit. products size: {}.", result == null ? null : result.getValue().size());
     return result;
   }
 
   /**
-   * Cache products.
+   * Gets one page of products by developerId, sorted by createdAt desc.
+   * 只读取该页的产品，不需要加载开发者所有的产品。
+   *
+   * @param developerId the developer id
+   * @param page the page number, start from 0
+   * @param size the page size
+   * @return the products, null if not cached
+   */
+  public CacheEntry<List<ProductView>> getProducts(String developerId, int page, int size) {
+    LOG.debug("Enter. developerId: {}, page: {}, size: {}.", developerId, page, size);
+
+    CacheEntry<List<ProductView>> allProducts = localProducts.getIfPresent(developerId);
+
+    if (allProducts != null) {
+      LOG.debug("Exit. local cache hit, products size: {}.", allProducts.getValue().size());
+      return allProducts.withValue(PageUtils.page(allProducts.getValue(), page, size));
+    }
+
+    CacheEntry<List<ProductView>> result =
+        readProducts(developerId, PageUtils.start(page, size), PageUtils.end(page, size));
+
+    LOG.debug("Exit. products: {}.", result == null ? null : result.getValue().size());
+    return result;
+  }
+
+  /**
+   * Gets the cache generation of the developer's products, read it before loading from database.
+   *
+   * @param developerId the developer id
+   * @return the generation, 0 if the products have never been changed
+   */
+  public long getGeneration(String developerId) {
+    return readGeneration(String.format(RedisUtils.PRODUCT_GENERATION_KEY_FORMAT, developerId));
+  }
+
+  /**
+   * Cache all products of the developer in background.
    *
    * @param developerId the developer id
    * @param products the products
+   * @param generation the generation read before loading the products
    */
-  @Async
-  public void cacheProducts(String developerId, List<ProductView> products) {
-    LOG.debug("Enter. products size: {}.", products.size());
+  public void cacheProducts(String developerId, List<ProductView> products, long generation) {
+    cacheWriter.submit("products:" + developerId,
+        () -> writeProducts(developerId, products, generation));
+  }
 
-    Map<String, ProductView> cacheProducts = Maps.newHashMap();
-    products.stream().forEach(view -> cacheProducts.put(view.getId(), view));
+  /**
+   * Cache all products of the developer, and mark them as fully loaded in the same transaction.
+   * 旧的缓存在同一个事务里被整体替换，所有key都设置硬过期时间。
+   * 产品数量超过chunk size时，先分批写入临时key，再在事务里RENAME，避免一个很大的事务长时间阻塞Redis。
+   * 开发者没有产品时，缓存一个短期的空标记。
+   *
+   * @param developerId the developer id
+   * @param products the products
+   * @param generation the generation read before loading the products
+   */
+  private void writeProducts(String developerId, List<ProductView> products, long generation) {
+    LOG.debug("Enter. products size: {}, generation: {}.", products.size(), generation);
 
-    redisTemplate.opsForHash()
-        .putAll(String.format(RedisUtils.PRODUCT_KEY_FORMAT, developerId), cacheProducts);
+    if (products.isEmpty()) {
+      boolean written = writeIfGeneration(developerId, generation,
+          operations -> operations.opsForValue().set(
+              String.format(RedisUtils.PRODUCT_EMPTY_KEY_FORMAT, developerId),
+              System.currentTimeMillis(), negativeExpireSeconds, TimeUnit.SECONDS));
 
-    LOG.debug("Exit. cache done.");
+      LOG.debug("Exit. cache empty mark written: {}.", written);
+      return;
+    }
+
+    String key = String.format(RedisUtils.PRODUCT_KEY_FORMAT, developerId);
+    String orderKey = String.format(RedisUtils.PRODUCT_ORDER_KEY_FORMAT, developerId);
+    String loadedKey = String.format(RedisUtils.PRODUCT_LOADED_KEY_FORMAT, developerId);
+    String emptyKey = String.format(RedisUtils.PRODUCT_EMPTY_KEY_FORMAT, developerId);
+
+    boolean written;
+    if (products.size() <= chunkSize) {
+      written = writeIfGeneration(developerId, generation, operations -> {
+        operations.delete(Lists.newArrayList(key, orderKey, emptyKey));
+        putProducts(operations, key, orderKey, products);
+        operations.opsForValue().set(loadedKey, System.currentTimeMillis(),
+            hardExpireSeconds, TimeUnit.SECONDS);
+        operations.expire(key, hardExpireSeconds, TimeUnit.SECONDS);
+        operations.expire(orderKey, hardExpireSeconds, TimeUnit.SECONDS);
+      });
+    } else {
+      String suffix = ":" + UUID.randomUUID().toString();
+      String tempKey = key + suffix;
+      String tempOrderKey = orderKey + suffix;
+
+      // 临时key对读请求不可见，每批写完都设置过期时间，中途失败也不会留下永久的key
+      Lists.partition(products, chunkSize).stream().forEach(chunk ->
+          redisTemplate.execute(new SessionCallback<List<Object>>() {
+            @Override
+            public List<Object> execute(RedisOperations operations) throws DataAccessException {
+              operations.multi();
+              putProducts(operations, tempKey, tempOrderKey, chunk);
+              operations.expire(tempKey, hardExpireSeconds, TimeUnit.SECONDS);
+              operations.expire(tempOrderKey, hardExpireSeconds, TimeUnit.SECONDS);
+              return operations.exec();
+            }
+          }));
+
+      written = writeIfGeneration(developerId, generation, operations -> {
+        operations.rename(tempKey, key);
+        operations.rename(tempOrderKey, orderKey);
+        operations.delete(emptyKey);
+        operations.opsForValue().set(loadedKey, System.currentTimeMillis(),
+            hardExpireSeconds, TimeUnit.SECONDS);
+        operations.expire(key, hardExpireSeconds, TimeUnit.SECONDS);
+        operations.expire(orderKey, hardExpireSeconds, TimeUnit.SECONDS);
+      });
+
+      if (!written) {
+        redisTemplate.delete(Lists.newArrayList(tempKey, tempOrderKey));
+      }
+    }
+
+    if (written) {
+      // 其他节点的本地缓存可能是刷新前的旧值
+      invalidate(developerId);
+    }
+
+    LOG.debug("Exit. cache written: {}.", written);
   }
 
   /**
@@ -140,25 +506,657 @@ public class CacheApplication {
   public ProductView getProductById(String developerId, String productId) {
     LOG.debug("Enter. developerId: {}, productId: {}.", developerId, productId);
 
+    String localKey = developerId + ":" + productId;
+    ProductView result = localProduct.getIfPresent(localKey);
+
+    if (result != null) {
+      LOG.debug("Exit. local cache hit, product: {}.", result);
+      return result;
+    }
+
     String key = String.format(RedisUtils.PRODUCT_KEY_FORMAT, developerId);
 
-    ProductView result = (ProductView) redisTemplate.opsForHash().get(key, productId);
+    result = (ProductView) redisTemplate.opsForHash().get(key, productId);
+
+    if (result != null) {
+      localProduct.put(localKey, result);
+    }
 
     LOG.debug("Exit. product: {}.", result);
     return result;
   }
 
   /**
-   * Delete products by developerId.
+   * Is the product known as not exist for the developer.
    *
    * @param developerId the developer id
+   * @param productId the product id
+   * @return true if cached as missing
    */
-  @Async
-  public void deleteProducts(String developerId) {
-    LOG.debug("Enter. developerId: {}.", developerId);
+  public boolean isMissingProduct(String developerId, String productId) {
+    return redisTemplate
+        .hasKey(String.format(RedisUtils.PRODUCT_MISSING_KEY_FORMAT, developerId, productId));
+  }
+
+  /**
+   * Cache a short-lived mark in background for a product not exist or not belong to the
+   * developer.
+   *
+   * @param developerId the developer id
+   * @param productId the product id
+   * @param generation the generation read before loading the product
+   */
+  public void fillMissingProduct(String developerId, String productId, long generation) {
+    LOG.debug("Enter. developerId: {}, productId: {}.", developerId, productId);
+
+    String key = String.format(RedisUtils.PRODUCT_MISSING_KEY_FORMAT, developerId, productId);
+
+    cacheWriter.submit(key, () -> writeIfGeneration(developerId, generation,
+        operations -> operations.opsForValue()
+            .set(key, System.currentTimeMillis(), negativeExpireSeconds, TimeUnit.SECONDS)));
+
+    LOG.debug("Exit. cache missing mark submitted.");
+  }
+
+  /**
+   * Upsert one product into the developer's cached hash after it was changed.
+   * 没有完整加载过的hash只会被单个产品查询使用，所以这里不需要判断hash是否存在。
+   *
+   * @param developerId the developer id
+   * @param product the product
+   */
+  public void cacheProduct(String developerId, ProductView product) {
+    LOG.debug("Enter. developerId: {}, productId: {}.", developerId, product.getId());
+
+    redisTemplate.execute(new SessionCallback<List<Object>>() {
+      @Override
+      public List<Object> execute(RedisOperations operations) throws DataAccessException {
+        operations.multi();
+        putProduct(operations, developerId, product);
+        increaseGeneration(operations, developerId);
+        return operations.exec();
+      }
+    });
+
+    invalidate(developerId);
+
+    LOG.debug("Exit. cache done.");
+  }
+
+  /**
+   * Fill one product loaded from database into the developer's cached hash in background.
+   * 数据没有变化，所以只填充本节点的本地缓存，不需要通知其它节点。
+   *
+   * @param developerId the developer id
+   * @param product the product
+   * @param generation the generation read before loading the product
+   */
+  public void fillProduct(String developerId, ProductView product, long generation) {
+    LOG.debug("Enter. developerId: {}, productId: {}.", developerId, product.getId());
+
+    String localKey = developerId + ":" + product.getId();
+
+    cacheWriter.submit("product:" + localKey, () -> {
+      if (writeIfGeneration(developerId, generation,
+          operations -> putProduct(operations, developerId, product))) {
+        localProduct.put(localKey, product);
+      }
+    });
+
+    LOG.debug("Exit. cache submitted.");
+  }
+
+  /**
+   * Delete one product from the developer's cached hash.
+   * 删除会直接执行，不会被丢弃。
+   *
+   * @param developerId the developer id
+   * @param productId the product id
+   */
+  public void deleteProduct(String developerId, String productId) {
+    LOG.debug("Enter. developerId: {}, productId: {}.", developerId, productId);
+
+    String key = String.format(RedisUtils.PRODUCT_KEY_FORMAT, developerId);
+    String orderKey = String.format(RedisUtils.PRODUCT_ORDER_KEY_FORMAT, developerId);
+    String dataKey = String.format(RedisUtils.PRODUCT_DATA_KEY_FORMAT, developerId, productId);
+
+    redisTemplate.execute(new SessionCallback<List<Object>>() {
+      @Override
+      public List<Object> execute(RedisOperations operations) throws DataAccessException {
+        operations.multi();
+        operations.opsForHash().delete(key, productId);
+        operations.opsForZSet().remove(orderKey, productId);
+        operations.delete(dataKey);
+        increaseGeneration(operations, developerId);
+        return operations.exec();
+      }
+    });
+
+    invalidate(developerId);
+    lastKnownProductData.invalidate(developerId + ":" + productId);
+
+    LOG.debug("Exit. delete done.");
+  }
+
+  /**
+   * Gets cached data definitions of the products, from local cache first and then from redis.
+   * 数据定义的key和产品使用相同的软过期和硬过期时间，写入时间由key剩余的TTL推算，
+   * 这样不需要额外的key，读取TTL和读取值在同一个pipeline中。
+   *
+   * @param developerId the developer id
+   * @param productIds the product ids
+   * @return the data definitions, key is productId, products not cached are not included
+   */
+  public Map<String, CacheEntry<List<ProductDataView>>> getProductData(String developerId,
+      List<String> productIds) {
+    LOG.debug("Enter. developerId: {}, productIds: {}.", developerId, productIds);
+
+    Map<String, CacheEntry<List<ProductDataView>>> result = Maps.newHashMap();
+    List<String> notLocal = Lists.newArrayList();
+
+    productIds.stream().forEach(productId -> {
+      CacheEntry<List<ProductDataView>> dataViews =
+          localProductData.getIfPresent(developerId + ":" + productId);
+      if (dataViews == null) {
+        notLocal.add(productId);
+      } else {
+        result.put(productId, dataViews);
+      }
+    });
+
+    if (!notLocal.isEmpty()) {
+      List<String> keys = notLocal.stream().map(productId ->
+          String.format(RedisUtils.PRODUCT_DATA_KEY_FORMAT, developerId, productId))
+          .collect(Collectors.toList());
+
+      // 每个key依次是值和剩余的TTL
+      List<Object> cacheData = Lists.newArrayListWithCapacity(keys.size() * 2);
+      Lists.partition(keys, chunkSize).stream()
+          .forEach(chunk -> cacheData.addAll(readWithTtl(chunk)));
+
+      long now = System.currentTimeMillis();
+      for (int i = 0; i < notLocal.size(); i++) {
+        List<ProductDataView> dataViews = (List<ProductDataView>) cacheData.get(i * 2);
+        Long ttl = (Long) cacheData.get(i * 2 + 1);
+        if (dataViews != null) {
+          CacheEntry<List<ProductDataView>> entry =
+              CacheEntry.of(dataViews, dataSoftExpireAt(now, ttl));
+          result.put(notLocal.get(i), entry);
+          localProductData.put(developerId + ":" + notLocal.get(i), entry);
+        }
+      }
+    }
+
+    LOG.debug("Exit. cached productData size: {}.", result.size());
+    return result;
+  }
+
+  /**
+   * Cache data definitions loaded from data-definition in background.
+   *
+   * @param developerId the developer id
+   * @param productData the data definitions, key is productId
+   * @param generation the generation read before loading the data definitions
+   */
+  public void fillProductData(String developerId, Map<String, List<ProductDataView>> productData,
+      long generation) {
+    LOG.debug("Enter. developerId: {}, productData size: {}.", developerId, productData.size());
+
+    // 这些数据刚从data-definition读到，同时作为不可用时的备用值
+    productData.entrySet().stream().forEach(entry ->
+        lastKnownProductData.put(developerId + ":" + entry.getKey(), entry.getValue()));
+
+    Map<String, List<ProductDataView>> cacheData = Maps.newHashMap();
+    productData.entrySet().stream().forEach(entry -> cacheData.put(
+        String.format(RedisUtils.PRODUCT_DATA_KEY_FORMAT, developerId, entry.getKey()),
+        entry.getValue()));
+
+    String writeKey = "data:" + developerId + ":" + String.join(",", productData.keySet());
 
-    redisTemplate.delete(String.format(RedisUtils.PRODUCT_KEY_FORMAT, developerId));
+    cacheWriter.submit(writeKey, () -> {
+      // 每个key都是独立的，分批写入，每批单独检查版本号
+      boolean written = Lists.partition(Lists.newArrayList(cacheData.keySet()), chunkSize).stream()
+          .allMatch(chunk -> writeIfGeneration(developerId, generation, operations -> {
+            chunk.stream().forEach(key -> operations.opsForValue()
+                .set(key, cacheData.get(key), hardExpireSeconds, TimeUnit.SECONDS));
+          }));
+
+      if (written) {
+        long softExpireAt =
+            System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(softExpireSeconds);
+        productData.entrySet().stream().forEach(entry -> localProductData.put(
+            developerId + ":" + entry.getKey(), CacheEntry.of(entry.getValue(), softExpireAt)));
+      }
+    });
+
+    LOG.debug("Exit. cache submitted.");
+  }
+
+  /**
+   * Gets the last data definitions successfully read from data-definition.
+   * 只在data-definition不可用时使用，返回的值不能写入缓存。
+   *
+   * @param developerId the developer id
+   * @param productIds the product ids
+   * @return the data definitions, key is productId, products never read are not included
+   */
+  public Map<String, List<ProductDataView>> getLastKnownProductData(String developerId,
+      List<String> productIds) {
+    Map<String, List<ProductDataView>> result = Maps.newHashMap();
+
+    productIds.stream().forEach(productId -> {
+      List<ProductDataView> dataViews =
+          lastKnownProductData.getIfPresent(developerId + ":" + productId);
+      if (dataViews != null) {
+        result.put(productId, dataViews);
+      }
+    });
+
+    return result;
+  }
+
+  /**
+   * Delete cached data definitions of the product after they were changed.
+   *
+   * @param developerId the developer id
+   * @param productId the product id
+   */
+  public void deleteProductData(String developerId, String productId) {
+    LOG.debug("Enter. developerId: {}, productId: {}.", developerId, productId);
+
+    String dataKey = String.format(RedisUtils.PRODUCT_DATA_KEY_FORMAT, developerId, productId);
+
+    redisTemplate.execute(new SessionCallback<List<Object>>() {
+      @Override
+      public List<Object> execute(RedisOperations operations) throws DataAccessException {
+        operations.multi();
+        operations.delete(dataKey);
+        increaseGeneration(operations, developerId);
+        return operations.exec();
+      }
+    });
+
+    invalidate(developerId);
 
     LOG.debug("Exit. delete done.");
   }
+
+  /**
+   * Gets hit/miss statistics of the local caches.
+   *
+   * @return the local cache stats
+   */
+  public Map<String, Object> getLocalCacheStats() {
+    Map<String, Object> result = Maps.newLinkedHashMap();
+
+    result.put("products", toMap(localProducts.stats(), localProducts.size()));
+    result.put("product", toMap(localProduct.stats(), localProduct.size()));
+    result.put("productData", toMap(localProductData.stats(), localProductData.size()));
+    result.put("lastKnownProductData",
+        toMap(lastKnownProductData.stats(), lastKnownProductData.size()));
+
+    return result;
+  }
+
+  /**
+   * Gets statistics of the background cache writes.
+   *
+   * @return the cache write stats
+   */
+  public Map<String, Object> getCacheWriteStats() {
+    return cacheWriter.getStats();
+  }
+
+  /**
+   * Receive invalidation message from other nodes (and this node), remove local cache.
+   * ProductType的本地快照直接从Redis重新加载，而不是清空。
+   *
+   * @param message the message, body is the developerId for products
+   * @param pattern the pattern
+   */
+  @Override
+  public void onMessage(Message message, byte[] pattern) {
+    String channel = new String(message.getChannel(), StandardCharsets.UTF_8);
+
+    if (RedisUtils.PRODUCT_TYPE_INVALIDATION_CHANNEL.equals(channel)) {
+      LOG.debug("Receive invalidation for productType, reload local snapshot.");
+      localProductTypes.set(readProductTypes());
+      return;
+    }
+
+    String developerId = new String(message.getBody(), StandardCharsets.UTF_8);
+
+    LOG.debug("Receive invalidation for developer: {}.", developerId);
+
+    evictLocal(developerId);
+  }
+
+  /**
+   * Read all product types from redis.
+   *
+   * @return the product type catalog, null if not cached or can not be read
+   */
+  private ProductTypeCatalog readProductTypes() {
+    Map<String, ProductTypeView> cacheProductTypes =
+        redisTemplate.opsForHash().entries(RedisUtils.PRODUCT_TYPE_KEY);
+
+    if (CollectionUtils.isEmpty(cacheProductTypes) || cacheProductTypes.containsValue(null)) {
+      return null;
+    }
+
+    return ProductTypeCatalog.of(cacheProductTypes.values());
+  }
+
+  /**
+   * Read products in the range of the order index.
+   * 在一次pipeline中检查空标记、是否完整加载并读取该范围的id，再用HMGET读取产品。
+   *
+   * @param developerId the developer id
+   * @param start the start index
+   * @param end the end index, inclusive, -1 means the last one
+   * @return the products with soft expire time, null if not fully cached, hard expired or can
+   *     not be read
+   */
+  private CacheEntry<List<ProductView>> readProducts(String developerId, long start, long end) {
+    String key = String.format(RedisUtils.PRODUCT_KEY_FORMAT, developerId);
+    String orderKey = String.format(RedisUtils.PRODUCT_ORDER_KEY_FORMAT, developerId);
+    String loadedKey = String.format(RedisUtils.PRODUCT_LOADED_KEY_FORMAT, developerId);
+    String emptyKey = String.format(RedisUtils.PRODUCT_EMPTY_KEY_FORMAT, developerId);
+
+    List<Object> index = redisTemplate.executePipelined(new SessionCallback<Object>() {
+      @Override
+      public Object execute(RedisOperations operations) throws DataAccessException {
+        operations.hasKey(emptyKey);
+        operations.opsForValue().get(loadedKey);
+        operations.opsForZSet().reverseRange(orderKey, start, end);
+        return null;
+      }
+    });
+
+    if (Boolean.TRUE.equals(index.get(0))) {
+      LOG.debug("Developer: {} has no product.", developerId);
+      // 空标记本身很快过期，不需要后台刷新
+      return CacheEntry.of(Lists.newArrayList(), Long.MAX_VALUE);
+    }
+
+    if (!(index.get(1) instanceof Number)) {
+      LOG.debug("Products of developer: {} are not fully cached.", developerId);
+      return null;
+    }
+
+    long loadedAt = ((Number) index.get(1)).longValue();
+
+    if (System.currentTimeMillis() - loadedAt > TimeUnit.SECONDS.toMillis(hardExpireSeconds)) {
+      LOG.debug("Cached products of developer: {} are hard expired.", developerId);
+      return null;
+    }
+
+    long softExpireAt = loadedAt + TimeUnit.SECONDS.toMillis(softExpireSeconds);
+
+    List<Object> productIds = Lists.newArrayList((Set<Object>) index.get(2));
+
+    if (productIds.isEmpty()) {
+      return CacheEntry.of(Lists.newArrayList(), softExpireAt);
+    }
+
+    // 产品很多时分批HMGET，每次只占用Redis很短的时间
+    List<ProductView> result = Lists.newArrayListWithCapacity(productIds.size());
+    Lists.partition(productIds, chunkSize).stream()
+        .forEach(chunk -> result.addAll(redisTemplate.opsForHash().multiGet(key, chunk)));
+
+    if (result.contains(null)) {
+      LOG.debug("Cached products of developer: {} can not be read.", developerId);
+      return null;
+    }
+
+    return CacheEntry.of(result, softExpireAt);
+  }
+
+  /**
+   * Put one product into the hash and the order index, should be called in a transaction.
+   * 同时删除该开发者和该产品的空标记，并设置硬过期时间，避免单个写入创建的hash永不过期。
+   *
+   * @param operations the redis operations in transaction
+   * @param developerId the developer id
+   * @param product the product
+   */
+  private void putProduct(RedisOperations operations, String developerId, ProductView product) {
+    String key = String.format(RedisUtils.PRODUCT_KEY_FORMAT, developerId);
+    String orderKey = String.format(RedisUtils.PRODUCT_ORDER_KEY_FORMAT, developerId);
+    List<String> negativeKeys = Lists.newArrayList(
+        String.format(RedisUtils.PRODUCT_EMPTY_KEY_FORMAT, developerId),
+        String.format(RedisUtils.PRODUCT_MISSING_KEY_FORMAT, developerId, product.getId()));
+
+    operations.opsForHash().put(key, product.getId(), product);
+    operations.opsForZSet().add(orderKey, product.getId(), score(product));
+    operations.delete(negativeKeys);
+    operations.expire(key, hardExpireSeconds, TimeUnit.SECONDS);
+    operations.expire(orderKey, hardExpireSeconds, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Put the products into the hash and the order index, should be called in a transaction.
+   *
+   * @param operations the redis operations in transaction
+   * @param key the hash key
+   * @param orderKey the order index key
+   * @param products the products
+   */
+  private void putProducts(RedisOperations operations, String key, String orderKey,
+      List<ProductView> products) {
+    Map<String, ProductView> cacheProducts = Maps.newHashMap();
+    Set<TypedTuple<Object>> order = Sets.newHashSet();
+    products.stream().forEach(view -> {
+      cacheProducts.put(view.getId(), view);
+      order.add(new DefaultTypedTuple<>(view.getId(), score(view)));
+    });
+
+    operations.opsForHash().putAll(key, cacheProducts);
+    operations.opsForZSet().add(orderKey, order);
+  }
+
+  /**
+   * Read the values and remaining TTL of the keys in one pipeline.
+   *
+   * @param keys the keys
+   * @return the value and TTL in seconds of each key
+   */
+  private List<Object> readWithTtl(List<String> keys) {
+    return redisTemplate.executePipelined(new SessionCallback<Object>() {
+      @Override
+      public Object execute(RedisOperations operations) throws DataAccessException {
+        keys.stream().forEach(key -> {
+          operations.opsForValue().get(key);
+          operations.getExpire(key);
+        });
+        return null;
+      }
+    });
+  }
+
+  /**
+   * The soft expire time of a data key, derived from it's remaining TTL.
+   * 数据定义写入时TTL为硬过期时间，已经过去的时间是硬过期时间减去剩余的TTL。
+   *
+   * @param now current time in millis
+   * @param ttl the remaining TTL in seconds, negative if unknown
+   * @return the soft expire time in millis
+   */
+  private long dataSoftExpireAt(long now, Long ttl) {
+    if (ttl == null || ttl < 0) {
+      return now + TimeUnit.SECONDS.toMillis(softExpireSeconds);
+    }
+
+    return now + TimeUnit.SECONDS.toMillis(softExpireSeconds - (hardExpireSeconds - ttl));
+  }
+
+  /**
+   * Write all product types, should be called in a transaction.
+   * RENAME需要源key存在，没有任何产品类型时直接删除。
+   *
+   * @param operations the redis operations in transaction
+   * @param productTypeViews the product type views
+   */
+  private void writeProductTypes(RedisOperations operations,
+      List<ProductTypeView> productTypeViews) {
+    if (productTypeViews.isEmpty()) {
+      operations.delete(RedisUtils.PRODUCT_TYPE_KEY);
+      return;
+    }
+
+    Map<String, ProductTypeView> cacheProductTypes = Maps.newHashMap();
+    productTypeViews.stream().forEach(view -> cacheProductTypes.put(view.getId(), view));
+
+    String tempKey = RedisUtils.PRODUCT_TYPE_KEY + ":" + UUID.randomUUID().toString();
+
+    operations.opsForHash().putAll(tempKey, cacheProductTypes);
+    operations.rename(tempKey, RedisUtils.PRODUCT_TYPE_KEY);
+    operations.expire(RedisUtils.PRODUCT_TYPE_KEY, productTypeExpireSeconds, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Read a generation key.
+   *
+   * @param generationKey the generation key
+   * @return the generation, 0 if not exist
+   */
+  private long readGeneration(String generationKey) {
+    String value = stringRedisTemplate.opsForValue().get(generationKey);
+
+    return value == null ? 0L : Long.parseLong(value);
+  }
+
+  /**
+   * Increase the generation of the developer's products, should be called in a transaction.
+   *
+   * @param operations the redis operations in transaction
+   * @param developerId the developer id
+   */
+  private void increaseGeneration(RedisOperations operations, String developerId) {
+    increaseGenerationKey(operations,
+        String.format(RedisUtils.PRODUCT_GENERATION_KEY_FORMAT, developerId));
+  }
+
+  /**
+   * Increase the generation key, should be called in a transaction.
+   *
+   * @param operations the redis operations in transaction
+   * @param generationKey the generation key
+   */
+  private void increaseGenerationKey(RedisOperations operations, String generationKey) {
+    operations.opsForValue().increment(generationKey, 1L);
+    operations.expire(generationKey, GENERATION_EXPIRE_SECONDS, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Run the writes in a transaction only if the generation is still the expected one.
+   * 使用WATCH/MULTI：读取版本号之后如果有修改，事务会被Redis放弃。
+   *
+   * @param developerId the developer id
+   * @param generation the expected generation
+   * @param writes the writes
+   * @return true if written, false if the generation has changed
+   */
+  private boolean writeIfGeneration(String developerId, long generation,
+      Consumer<RedisOperations> writes) {
+    return writeIfGenerationKey(
+        String.format(RedisUtils.PRODUCT_GENERATION_KEY_FORMAT, developerId), generation, writes);
+  }
+
+  /**
+   * Run the writes in a transaction only if the generation key is still the expected value.
+   *
+   * @param generationKey the generation key
+   * @param generation the expected generation
+   * @param writes the writes
+   * @return true if written, false if the generation has changed
+   */
+  private boolean writeIfGenerationKey(String generationKey, long generation,
+      Consumer<RedisOperations> writes) {
+    byte[] rawKey = generationKey.getBytes(StandardCharsets.UTF_8);
+
+    List<Object> result = (List<Object>) redisTemplate.execute(
+        new SessionCallback<List<Object>>() {
+          @Override
+          public List<Object> execute(RedisOperations operations) throws DataAccessException {
+            operations.watch(generationKey);
+
+            // 版本号是INCR写入的数字字符串，不经过value的codec
+            byte[] current = (byte[]) operations.execute(
+                (RedisCallback<byte[]>) connection -> connection.get(rawKey));
+            long currentGeneration =
+                current == null ? 0L : Long.parseLong(new String(current, StandardCharsets.UTF_8));
+
+            if (currentGeneration != generation) {
+              operations.unwatch();
+              return null;
+            }
+
+            operations.multi();
+            writes.accept(operations);
+            return operations.exec();
+          }
+        });
+
+    if (CollectionUtils.isEmpty(result)) {
+      LOG.debug("Generation: {} changed, discard stale cache write.", generationKey);
+      return false;
+    }
+
+    return true;
+  }
+
+
+  /**
+   * The score of the product in the order index.
+   *
+   * @param product the product
+   * @return the score
+   */
+  private static double score(ProductView product) {
+    return product.getCreatedAt() == null ? 0 : product.getCreatedAt();
+  }
+
+  /**
+   * Remove local cache of the developer and notify all nodes to do the same.
+   *
+   * @param developerId the developer id
+   */
+  private void invalidate(String developerId) {
+    evictLocal(developerId);
+
+    stringRedisTemplate.convertAndSend(RedisUtils.INVALIDATION_CHANNEL, developerId);
+  }
+
+  /**
+   * Remove local cache of the developer.
+   *
+   * @param developerId the developer id
+   */
+  private void evictLocal(String developerId) {
+    String prefix = developerId + ":";
+
+    localProducts.invalidate(developerId);
+    localProduct.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+    localProductData.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+  }
+
+  /**
+   * Convert cache stats to map.
+   *
+   * @param stats the stats
+   * @param size the size
+   * @return the map
+   */
+  private Map<String, Object> toMap(CacheStats stats, long size) {
+    Map<String, Object> result = Maps.newLinkedHashMap();
+
+    result.put("size", size);
+    result.put("hitCount", stats.hitCount());
+    result.put("missCount", stats.missCount());
+    result.put("hitRate", stats.hitRate());
+    result.put("evictionCount", stats.evictionCount());
+
+    return result;
+  }
 }
@@ -0,0 +1,162 @@
+package com.umasuo.product.application.service;
+
+import com.google.common.collect.Lists;
+import com.umasuo.product.infrastructure.util.RedisUtils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 删除旧版本留下的缓存key。
+ * 旧版本的key使用java序列化（以0xACED0005开头），新版本不会再读写它们，其中product:producttype和
+ * product:{developerId}没有过期时间，不删除会一直留在Redis中。
+ * 每个Redis只需要清理一次，由第一个抢到标记key的节点执行。
+ */
+@Service
+public class LegacyCacheCleaner {
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOG = LoggerFactory.getLogger(LegacyCacheCleaner.class);
+
+  /**
+   * Header of java serialization stream, every legacy key starts with it.
+   */
+  private static final byte[] JDK_SERIALIZATION_HEADER =
+      {(byte) 0xAC, (byte) 0xED, (byte) 0x00, (byte) 0x05};
+
+  /**
+   * Legacy keys contain this text after the serialization header.
+   */
+  private static final String LEGACY_KEY_PATTERN = "*product:*";
+
+  /**
+   * Run the cleanup at startup.
+   */
+  @Value("${cache.legacy-cleanup.enabled:true}")
+  private transient boolean enabled;
+
+  /**
+   * Keys scanned and deleted in one batch.
+   */
+  @Value("${cache.legacy-cleanup.batch-size:1000}")
+  private transient int batchSize;
+
+  /**
+   * The done mark expires after this days, running the cleanup again is harmless.
+   */
+  @Value("${cache.legacy-cleanup.mark-expire-days:30}")
+  private transient long markExpireDays;
+
+  /**
+   * The string redis template, works on raw keys.
+   */
+  @Autowired
+  private transient StringRedisTemplate stringRedisTemplate;
+
+  /**
+   * Delete legacy keys once after startup.
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  public void cleanUp() {
+    if (!enabled) {
+      return;
+    }
+
+    LOG.debug("Enter.");
+
+    try {
+      Boolean first = stringRedisTemplate.opsForValue()
+          .setIfAbsent(RedisUtils.LEGACY_CLEANED_KEY, String.valueOf(System.currentTimeMillis()));
+
+      if (!Boolean.TRUE.equals(first)) {
+        LOG.debug("Exit. legacy keys already cleaned.");
+        return;
+      }
+
+      stringRedisTemplate.expire(RedisUtils.LEGACY_CLEANED_KEY, markExpireDays, TimeUnit.DAYS);
+
+      long deleted = stringRedisTemplate.execute((RedisCallback<Long>) this::deleteLegacyKeys);
+
+      LOG.info("Legacy cache keys deleted: {}.", deleted);
+    } catch (RuntimeException ex) {
+      // 清理失败不影响服务，标记删除后下次启动重试
+      LOG.warn("Delete legacy cache keys failed.", ex);
+      try {
+        stringRedisTemplate.delete(RedisUtils.LEGACY_CLEANED_KEY);
+      } catch (RuntimeException deleteEx) {
+        LOG.debug("Delete legacy cleanup mark failed.", deleteEx);
+      }
+    }
+  }
+
+  /**
+   * Scan keys like product:* and delete those serialized by java serialization.
+   *
+   * @param connection the redis connection
+   * @return the deleted count
+   */
+  private Long deleteLegacyKeys(RedisConnection connection) {
+    ScanOptions options = ScanOptions.scanOptions()
+        .match(LEGACY_KEY_PATTERN).count(batchSize).build();
+
+    long deleted = 0;
+    List<byte[]> batch = Lists.newArrayList();
+
+    try (Cursor<byte[]> cursor = connection.scan(options)) {
+      while (cursor.hasNext()) {
+        byte[] key = cursor.next();
+        if (isLegacy(key)) {
+          batch.add(key);
+        }
+        if (batch.size() >= batchSize) {
+          deleted += connection.del(batch.toArray(new byte[0][]));
+          batch.clear();
+        }
+      }
+    } catch (IOException ex) {
+      LOG.debug("Close scan cursor failed.", ex);
+    }
+
+    if (!batch.isEmpty()) {
+      deleted += connection.del(batch.toArray(new byte[0][]));
+    }
+
+    return deleted;
+  }
+
+  /**
+   * Is the key serialized by java serialization.
+   *
+   * @param key the raw key
+   * @return true if legacy
+   */
+  private static boolean isLegacy(byte[] key) {
+    if (key.length < JDK_SERIALIZATION_HEADER.length) {
+      return false;
+    }
+
+    for (int i = 0; i < JDK_SERIALIZATION_HEADER.length; i++) {
+      if (key[i] != JDK_SERIALIZATION_HEADER[i]) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+}
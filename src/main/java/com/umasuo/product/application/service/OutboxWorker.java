@@ -0,0 +1,262 @@
+package com.umasuo.product.application.service;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.umasuo.product.domain.model.OutboxEvent;
+import com.umasuo.product.domain.service.OutboxService;
+import com.umasuo.product.infrastructure.client.ServiceUnavailableException;
+import com.umasuo.product.infrastructure.enums.OutboxEventType;
+import com.umasuo.product.infrastructure.enums.OutboxStatus;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * 后台投递outbox中的事件到data-definition。
+ * 每次取出一批到期的事件逐个投递，失败的按指数退避重试，重试次数用完后标记为FAILED。
+ */
+@Service
+public class OutboxWorker {
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOG = LoggerFactory.getLogger(OutboxWorker.class);
+
+  /**
+   * Max events delivered in one run.
+   */
+  @Value("${outbox.batch-size:100}")
+  private transient int batchSize;
+
+  /**
+   * Max attempts before giving up an event.
+   */
+  @Value("${outbox.max-attempts:10}")
+  private transient int maxAttempts;
+
+  /**
+   * Delay before the first retry, doubled for each following retry.
+   */
+  @Value("${outbox.backoff-millis:1000}")
+  private transient long backoffMillis;
+
+  /**
+   * Max delay between retries.
+   */
+  @Value("${outbox.max-backoff-millis:300000}")
+  private transient long maxBackoffMillis;
+
+  /**
+   * How long a claimed event is hidden from other nodes.
+   */
+  @Value("${outbox.lease-millis:60000}")
+  private transient long leaseMillis;
+
+  /**
+   * OutboxService.
+   */
+  @Autowired
+  private transient OutboxService outboxService;
+
+  /**
+   * RestClient.
+   */
+  @Autowired
+  private transient RestClient restClient;
+
+  /**
+   * CacheApplication.
+   */
+  @Autowired
+  private transient CacheApplication cacheApplication;
+
+  /**
+   * ProductTypeApplication.
+   */
+  @Autowired
+  private transient ProductTypeApplication productTypeApplication;
+
+  /**
+   * Result of delivering one event.
+   */
+  private enum Result {
+    DELIVERED,
+    FAILED,
+    UNAVAILABLE
+  }
+
+  /**
+   * Deliver one batch of due events.
+   */
+  @Scheduled(fixedDelayString = "${outbox.poll-interval-millis:1000}")
+  public void deliver() {
+    List<OutboxEvent> events = outboxService.getDue(batchSize);
+
+    if (events.isEmpty()) {
+      return;
+    }
+
+    LOG.debug("Enter. event size: {}.", events.size());
+
+    // 先删除全部数据定义，成功后同一批中这些产品和产品类型的单个数据定义不需要再删除；
+    // 删除全部失败时，单个数据定义照常删除
+    List<OutboxEvent> ordered = events.stream()
+        .sorted(Comparator.comparing(event -> !isDeleteAll(event)))
+        .collect(Collectors.toList());
+    Set<String> deletedAllProducts = Sets.newHashSet();
+    Set<String> deletedAllProductTypes = Sets.newHashSet();
+
+    Map<String, String> changedProducts = Maps.newHashMap();
+    Set<String> changedProductTypes = Sets.newHashSet();
+    int delivered = 0;
+
+    for (OutboxEvent event : ordered) {
+      OutboxEvent claimed = outboxService.claim(event, leaseMillis);
+
+      if (claimed == null) {
+        continue;
+      }
+
+      Result result = deliver(claimed, deletedAllProducts, deletedAllProductTypes);
+
+      if (result == Result.UNAVAILABLE) {
+        LOG.debug("Data-definition is unavailable, stop this batch.");
+        break;
+      }
+
+      if (result == Result.DELIVERED) {
+        delivered++;
+        if (claimed.getType() == OutboxEventType.DELETE_ALL_DATA_DEFINITION) {
+          deletedAllProducts.add(claimed.getProductId());
+        } else if (claimed.getType() == OutboxEventType.DELETE_ALL_PRODUCT_TYPE_DATA) {
+          deletedAllProductTypes.add(claimed.getProductTypeId());
+        } else if (claimed.getType() == OutboxEventType.DELETE_DATA_DEFINITION) {
+          changedProducts.put(claimed.getProductId(), claimed.getDeveloperId());
+        } else if (claimed.getType() == OutboxEventType.DELETE_PRODUCT_TYPE_DATA) {
+          changedProductTypes.add(claimed.getProductTypeId());
+        }
+      }
+    }
+
+    // 数据定义删除后，缓存中的数据定义才过期
+    changedProducts.entrySet().stream().forEach(entry ->
+        cacheApplication.deleteProductData(entry.getValue(), entry.getKey()));
+
+    if (!changedProductTypes.isEmpty()) {
+      productTypeApplication.refreshCatalog();
+    }
+
+    LOG.debug("Exit. delivered: {}.", delivered);
+  }
+
+  /**
+   * Gets the statistics of outbox.
+   *
+   * @return the statistics
+   */
+  public Map<String, Object> getStats() {
+    Map<String, Object> result = Maps.newLinkedHashMap();
+
+    result.put("pending", outboxService.count(OutboxStatus.PENDING));
+    result.put("failed", outboxService.count(OutboxStatus.FAILED));
+
+    return result;
+  }
+
+  /**
+   * Deliver one claimed event.
+   *
+   * @param event the claimed event
+   * @param deletedAllProducts products whose data definitions have all been deleted in this batch
+   * @param deletedAllProductTypes product types whose data definitions have all been deleted in
+   *     this batch
+   * @return the result
+   */
+  private Result deliver(OutboxEvent event, Set<String> deletedAllProducts,
+      Set<String> deletedAllProductTypes) {
+    try {
+      switch (event.getType()) {
+        case DELETE_ALL_DATA_DEFINITION:
+          restClient.deleteAllDataDefinition(event.getDeveloperId(), event.getProductId());
+          break;
+        case DELETE_DATA_DEFINITION:
+          if (!deletedAllProducts.contains(event.getProductId())) {
+            restClient.deleteDataDefinition(event.getDeveloperId(), event.getProductId(),
+                event.getDataDefinitionId());
+          }
+          break;
+        case DELETE_ALL_PRODUCT_TYPE_DATA:
+          restClient.deleteProductTypeData(event.getProductTypeId());
+          break;
+        case DELETE_PRODUCT_TYPE_DATA:
+          if (!deletedAllProductTypes.contains(event.getProductTypeId())) {
+            restClient.deleteProductTypeData(event.getProductTypeId(),
+                event.getDataDefinitionId());
+          }
+          break;
+        default:
+          outboxService.fail(event, "Unknown event type");
+          return Result.FAILED;
+      }
+    } catch (HttpClientErrorException ex) {
+      // 已经不存在的当作删除成功，其它4xx重试也不会成功
+      if (ex.getStatusCode() != HttpStatus.NOT_FOUND) {
+        outboxService.fail(event, ex.getMessage());
+        return Result.FAILED;
+      }
+    } catch (ServiceUnavailableException ex) {
+      retryLater(event, ex);
+      return Result.UNAVAILABLE;
+    } catch (RuntimeException ex) {
+      retryLater(event, ex);
+      return Result.FAILED;
+    }
+
+    outboxService.delivered(event);
+    return Result.DELIVERED;
+  }
+
+  /**
+   * Does the event delete all data definitions of a product or product type.
+   *
+   * @param event the event
+   * @return true if delete all
+   */
+  private static boolean isDeleteAll(OutboxEvent event) {
+    return event.getType() == OutboxEventType.DELETE_ALL_DATA_DEFINITION
+        || event.getType() == OutboxEventType.DELETE_ALL_PRODUCT_TYPE_DATA;
+  }
+
+  /**
+   * Retry the event with exponential backoff, give up when attempts are used up.
+   *
+   * @param event the event
+   * @param ex the exception
+   */
+  private void retryLater(OutboxEvent event, RuntimeException ex) {
+    if (event.getAttempts() >= maxAttempts) {
+      outboxService.fail(event, ex.getMessage());
+      return;
+    }
+
+    int shift = Math.min(event.getAttempts() - 1, 30);
+    long delay = Math.min(backoffMillis << shift, maxBackoffMillis);
+
+    LOG.debug("Deliver event: {} failed, retry after {} ms.", event.getId(), delay, ex);
+
+    outboxService.retry(event, delay, ex.getMessage());
+  }
+}
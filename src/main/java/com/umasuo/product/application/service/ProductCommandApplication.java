@@ -1,11 +1,15 @@
 package com.umasuo.product.application.service;
 
+import com.google.common.collect.Lists;
 import com.umasuo.product.application.dto.ProductDataView;
 import com.umasuo.product.application.dto.ProductDraft;
 import com.umasuo.product.application.dto.ProductView;
+import com.umasuo.product.application.dto.action.AddDataDefinition;
 import com.umasuo.product.application.dto.mapper.ProductMapper;
+import com.umasuo.product.application.service.update.AddDataDefinitionService;
 import com.umasuo.product.domain.model.Product;
 import com.umasuo.product.domain.model.ProductType;
+import com.umasuo.product.domain.service.OutboxService;
 import com.umasuo.product.domain.service.ProductService;
 import com.umasuo.product.domain.service.ProductTypeService;
 import com.umasuo.product.infrastructure.enums.ProductStatus;
@@ -19,9 +23,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * 用于增删改Product.
@@ -53,10 +60,22 @@ public class ProductCommandApplication {
   private transient ProductTypeService productTypeService;
 
   /**
-   * RestClient.
+   * AddDataDefinitionService, used to add many data definitions concurrently.
    */
   @Autowired
-  private transient RestClient restClient;
+  private transient AddDataDefinitionService addDataDefinitionService;
+
+  /**
+   * OutboxService.
+   */
+  @Autowired
+  private transient OutboxService outboxService;
+
+  /**
+   * TransactionTemplate, used to save product and outbox events in one transaction.
+   */
+  @Autowired
+  private transient TransactionTemplate transactionTemplate;
 
   /**
    * CacheApplication.
@@ -64,39 +83,47 @@ public class ProductCommandApplication {
   @Autowired
   private transient CacheApplication cacheApplication;
 
+  /**
+   * ProductQueryApplication.
+   */
+  @Autowired
+  private transient ProductQueryApplication productQueryApplication;
+
   /**
    * Create Product.
+   * 事务提交后才写缓存，提交失败时缓存中不会留下不存在的产品。
    *
    * @param draft product draft
    * @param developerId the developer id
    * @return product view
    */
-  @Transactional
   public ProductView create(ProductDraft draft, String developerId) {
     LOG.debug("Enter. developerId: {}, draft: {}.", developerId, draft);
 
-    // 1. 检查名字是否重复
-    productService.isExistName(developerId, draft.getName());
+    Product product = transactionTemplate.execute(status -> {
+      // 1. 检查名字是否重复
+      productService.isExistName(developerId, draft.getName());
 
-    // 2. 获取产品类型，并检测其是否存在
-    ProductType productType = productTypeService.getById(draft.getProductTypeId());
-    productTypeService.exists(draft.getProductTypeId());
+      // 2. 获取产品类型，并检测其是否存在
+      ProductType productType = productTypeService.getById(draft.getProductTypeId());
+      productTypeService.exists(draft.getProductTypeId());
 
-    // 3. 生成实体对象
-    Product product = ProductMapper.toModel(draft, developerId, productType.getIcon());
-
-    product = productService.save(product);
-
-    cacheApplication.deleteProducts(developerId);
+      // 3. 生成实体对象
+      return productService.save(
+          ProductMapper.toModel(draft, developerId, productType.getIcon()));
+    });
 
     ProductView view = ProductMapper.toView(product);
 
+    cacheApplication.cacheProduct(developerId, view);
+
     LOG.debug("Exit. productView: {}.", view);
     return view;
   }
 
   /**
    * 删除Product。
+   * 数据定义的删除和产品的删除在同一个事务中记录到outbox，由后台任务投递，数据库提交后就返回。
    *
    * @param id product id
    * @param developerId the developer id
@@ -109,11 +136,13 @@ public class ProductCommandApplication {
 
     checkForUpdateAndDelete(developerId, product, version);
 
-    productService.delete(id);
+    transactionTemplate.execute(status -> {
+      productService.delete(id);
+      outboxService.addDeleteAllDataDefinition(developerId, id);
+      return null;
+    });
 
-    cacheApplication.deleteProducts(developerId);
-
-    restClient.deleteAllDataDefinition(developerId, product.getId());
+    cacheApplication.deleteProduct(developerId, id);
 
     LOG.debug("Exit.");
   }
@@ -135,17 +164,46 @@ public class ProductCommandApplication {
 
     checkForUpdateAndDelete(developerId, valueInDb, version);
 
-    actions.stream().forEach(action -> updaterService.handle(valueInDb, action));
-
-    Product product = productService.save(valueInDb);
-
-    cacheApplication.deleteProducts(developerId);
+    List<String> dataDefinitionIds = valueInDb.getDataDefineIds() == null
+        ? Lists.newArrayList() : Lists.newArrayList(valueInDb.getDataDefineIds());
+
+    // 这次在data-definition中新建的数据定义，后面的步骤失败时要删除
+    List<String> createdIds = Lists.newArrayList();
+
+    List<String> removedIds;
+    CompletableFuture<List<ProductDataView>> dataDefinitions;
+    Product product;
+    try {
+      applyActions(valueInDb, actions, createdIds);
+
+      // 被移除的数据定义（包括这次新建又移除的）在保存产品的事务中记录到outbox，由后台任务删除
+      removedIds = Stream.concat(dataDefinitionIds.stream(), createdIds.stream())
+          .filter(dataDefinitionId -> valueInDb.getDataDefineIds() == null
+              || !valueInDb.getDataDefineIds().contains(dataDefinitionId))
+          .collect(Collectors.toList());
+
+      // 数据定义的修改已经删除了数据定义的缓存，其它修改直接使用缓存中的数据定义
+      // 需要访问data-definition时，和保存数据库同时进行，被移除的数据定义不写入缓存
+      dataDefinitions = productQueryApplication.getDataDefinitionsAsync(developerId, id,
+          removedIds);
+
+      product = transactionTemplate.execute(status -> {
+        Product savedProduct = productService.save(valueInDb);
+        if (!removedIds.isEmpty()) {
+          outboxService.addDeleteDataDefinitions(developerId, id, removedIds);
+        }
+        return savedProduct;
+      });
+    } catch (RuntimeException ex) {
+      compensate(developerId, valueInDb, dataDefinitionIds, createdIds);
+      throw ex;
+    }
 
-    List<ProductDataView> productDataViews = restClient.getProductData(developerId, id);
+    ProductView view = ProductMapper.toView(product);
 
-    ProductView updatedProduct = ProductMapper.toView(product);
+    cacheApplication.cacheProduct(developerId, view);
 
-    updatedProduct.setDataDefinitions(productDataViews);
+    ProductView updatedProduct = ProductMapper.toView(view, dataDefinitions.join());
 
     LOG.debug("Exit: updated product: {}", updatedProduct);
     return updatedProduct;
@@ -173,13 +231,100 @@ public class ProductCommandApplication {
       product.setStatus(ProductStatus.DEVELOPING);
     }
 
-    productService.save(product);
+    Product savedProduct = productService.save(product);
+
+    refreshCache(savedProduct);
+
+    LOG.debug("Exit.");
+  }
 
-    cacheApplication.deleteProducts(product.getDeveloperId());
+  /**
+   * 产品的基本信息变化后（例如状态），刷新缓存中的该产品，数据定义单独缓存，不受影响。
+   * 缓存中没有该产品时也要写入，写入会增加版本号，正在进行的、读到旧状态的缓存填充会被放弃。
+   *
+   * @param product the saved product
+   */
+  public void refreshCache(Product product) {
+    LOG.debug("Enter. productId: {}.", product.getId());
+
+    cacheApplication.cacheProduct(product.getDeveloperId(), ProductMapper.toView(product));
 
     LOG.debug("Exit.");
   }
 
+  /**
+   * 按顺序执行actions，连续的AddDataDefinition会并发调用data-definition，结果仍然按原来的顺序加到产品中。
+   *
+   * @param product the product
+   * @param actions the actions
+   * @param createdIds collects ids created in data-definition
+   */
+  private void applyActions(Product product, List<UpdateAction> actions,
+      List<String> createdIds) {
+    List<AddDataDefinition> additions = Lists.newArrayList();
+
+    for (UpdateAction action : actions) {
+      if (action instanceof AddDataDefinition) {
+        additions.add((AddDataDefinition) action);
+        continue;
+      }
+
+      addDataDefinitions(product, additions, createdIds);
+      updaterService.handle(product, action);
+    }
+
+    addDataDefinitions(product, additions, createdIds);
+  }
+
+  /**
+   * Add the collected data definitions concurrently, then clear them.
+   *
+   * @param product the product
+   * @param additions the collected AddDataDefinition actions
+   * @param createdIds collects ids created in data-definition
+   */
+  private void addDataDefinitions(Product product, List<AddDataDefinition> additions,
+      List<String> createdIds) {
+    if (additions.isEmpty()) {
+      return;
+    }
+
+    addDataDefinitionService.handleAll(product, Lists.newArrayList(additions), createdIds);
+    additions.clear();
+  }
+
+  /**
+   * 更新失败时，删除这次在data-definition中新建（包括复制）的数据定义，删除通过outbox投递。
+   *
+   * @param developerId the developer id
+   * @param product the product with actions applied
+   * @param dataDefinitionIds the data definition ids before update
+   * @param createdIds ids created by AddDataDefinition
+   */
+  private void compensate(String developerId, Product product, List<String> dataDefinitionIds,
+      List<String> createdIds) {
+    Stream<String> addedIds = product.getDataDefineIds() == null ? Stream.empty()
+        : product.getDataDefineIds().stream()
+            .filter(dataDefinitionId -> !dataDefinitionIds.contains(dataDefinitionId));
+
+    List<String> orphanIds = Stream.concat(createdIds.stream(), addedIds)
+        .distinct()
+        .collect(Collectors.toList());
+
+    if (orphanIds.isEmpty()) {
+      return;
+    }
+
+    LOG.debug("Update product: {} failed, delete created dataDefinitions: {}.",
+        product.getId(), orphanIds);
+
+    try {
+      outboxService.addDeleteDataDefinitions(developerId, product.getId(), orphanIds);
+    } catch (RuntimeException ex) {
+      LOG.warn("Record delete of dataDefinitions: {} failed.", orphanIds, ex);
+    }
+  }
+
   /**
    * 在update和delete中，需要检查developer是否一致，version是否一致，status是否合法。
    */
@@ -1,19 +1,32 @@
 package com.umasuo.product.application.service;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.umasuo.exception.NotExistException;
+import com.umasuo.exception.ParametersException;
 import com.umasuo.product.application.dto.ProductDataView;
 import com.umasuo.product.application.dto.ProductView;
 import com.umasuo.product.application.dto.mapper.ProductMapper;
 import com.umasuo.product.domain.model.Product;
 import com.umasuo.product.domain.service.ProductService;
+import com.umasuo.product.infrastructure.cache.CacheEntry;
+import com.umasuo.product.infrastructure.cache.SingleFlightLoader;
+import com.umasuo.product.infrastructure.util.PageUtils;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClientException;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 /**
@@ -45,6 +58,37 @@ public class ProductQueryApplication {
   @Autowired
   private transient CacheApplication cacheApplication;
 
+  /**
+   * Merge concurrent cache miss loads of the same developer.
+   */
+  private final transient SingleFlightLoader<String, List<ProductView>> productsLoader =
+      new SingleFlightLoader<>();
+
+  /**
+   * Merge concurrent cache miss loads of the same product.
+   */
+  private final transient SingleFlightLoader<String, ProductView> productLoader =
+      new SingleFlightLoader<>();
+
+  /**
+   * Merge concurrent cache miss loads of the same products' data definitions.
+   */
+  private final transient SingleFlightLoader<String, Map<String, List<ProductDataView>>>
+      productDataLoader = new SingleFlightLoader<>();
+
+  /**
+   * Executor for refreshing soft-expired products.
+   */
+  @Autowired
+  @Qualifier("cacheRefreshExecutor")
+  private transient TaskExecutor cacheRefreshExecutor;
+
+  /**
+   * Developers whose products, or products whose data definitions, are being refreshed in
+   * background.
+   */
+  private final transient Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
   /**
    * Get product by id.
    *
@@ -57,12 +101,19 @@ public class ProductQueryApplication {
 
     ProductView result = cacheApplication.getProductById(developerId, id);
 
+    if (result == null && cacheApplication.isMissingProduct(developerId, id)) {
+      LOG.debug("Exit. product: {} is cached as missing.", id);
+      return null;
+    }
+
     if (result == null) {
       LOG.debug("Cache fail, get from database.");
+      result = fetchProduct(id, developerId);
+    }
 
-      List<ProductView> productViews = fetchProducts(developerId);
-
-      result = productViews.stream().filter(view -> id.equals(view.getId())).findAny().orElse(null);
+    // 确认产品存在并且属于该developer之后才查询数据定义，不存在的id不访问data-definition，也不写入缓存
+    if (result != null) {
+      result = withDataDefinitions(developerId, result);
     }
 
     LOG.debug("Exit. productView: {}.", result);
@@ -70,7 +121,7 @@ public class ProductQueryApplication {
   }
 
   /**
-   * Get all product by developer id.
+   * Get all product by developer id, sorted by createdAt desc.
    *
    * @param developerId developer id
    * @return list build product view
@@ -78,18 +129,116 @@ public class ProductQueryApplication {
   public List<ProductView> getAllByDeveloperId(String developerId) {
     LOG.debug("Enter. developerId: {}.", developerId);
 
-    List<ProductView> result = cacheApplication.getProducts(developerId);
+    CacheEntry<List<ProductView>> cached = cacheApplication.getProducts(developerId);
 
-    if (result.isEmpty()) {
+    List<ProductView> result;
+    if (cached == null) {
       LOG.debug("Cache fail, get from database.");
       result = fetchProducts(developerId);
+    } else {
+      result = cached.getValue();
+      refreshIfStale(developerId, cached);
     }
 
+    result = withDataDefinitions(developerId, result);
+
     LOG.trace("products: {}.", result);
     LOG.debug("Exit. product Size: {}.", result.size());
     return result;
   }
 
+  /**
+   * Get one page of products by developer id, sorted by createdAt desc.
+   *
+   * @param developerId developer id
+   * @param page the page number, start from 0
+   * @param size the page size
+   * @return list build product view
+   */
+  public List<ProductView> getAllByDeveloperId(String developerId, int page, int size) {
+    LOG.debug("Enter. developerId: {}, page: {}, size: {}.", developerId, page, size);
+
+    if (page < 0 || size <= 0) {
+      LOG.debug("Invalid page: {}, size: {}.", page, size);
+      throw new ParametersException("Page should not be negative and size should be positive");
+    }
+
+    CacheEntry<List<ProductView>> cached = cacheApplication.getProducts(developerId, page, size);
+
+    List<ProductView> result;
+    if (cached == null) {
+      LOG.debug("Cache fail, get from database.");
+      result = PageUtils.page(fetchProducts(developerId), page, size);
+    } else {
+      result = cached.getValue();
+      refreshIfStale(developerId, cached);
+    }
+
+    result = withDataDefinitions(developerId, result);
+
+    LOG.trace("products: {}.", result);
+    LOG.debug("Exit. product Size: {}.", result.size());
+    return result;
+  }
+
+  /**
+   * Gets data definitions of the product, from cache first and then from data-definition without
+   * blocking the calling thread.
+   * data-definition不可用时返回最后一次成功读取的值，这个值不会写入缓存。
+   *
+   * @param developerId the developer id
+   * @param productId the product id
+   * @return the future of data definitions
+   */
+  public CompletableFuture<List<ProductDataView>> getDataDefinitionsAsync(String developerId,
+      String productId) {
+    return getDataDefinitionsAsync(developerId, productId, Lists.newArrayList());
+  }
+
+  /**
+   * Gets data definitions of the product without the removed ones.
+   * 产品移除的数据定义由outbox异步删除，删除之前data-definition仍然会返回它们，
+   * 所以先去掉再写入缓存，避免被移除的数据定义重新进入缓存。
+   *
+   * @param developerId the developer id
+   * @param productId the product id
+   * @param removedIds the data definition ids removed from the product
+   * @return the future of data definitions
+   */
+  public CompletableFuture<List<ProductDataView>> getDataDefinitionsAsync(String developerId,
+      String productId, List<String> removedIds) {
+    LOG.debug("Enter. developerId: {}, productId: {}, removedIds: {}.", developerId, productId,
+        removedIds);
+
+    CacheEntry<List<ProductDataView>> cached = cacheApplication
+        .getProductData(developerId, Lists.newArrayList(productId)).get(productId);
+
+    if (cached != null) {
+      LOG.debug("Exit. productData cache hit.");
+      if (cached.isStale()) {
+        refreshDataInBackground(developerId, Lists.newArrayList(productId));
+      }
+      return CompletableFuture.completedFuture(withoutRemoved(cached.getValue(), removedIds));
+    }
+
+    long generation = cacheApplication.getGeneration(developerId);
+
+    return restClient.getProductDataAsync(developerId, productId).handle((dataViews, ex) -> {
+      if (ex != null) {
+        LOG.warn("Get data definition of product: {} failed, use last known.", productId, ex);
+        return withoutRemoved(lastKnownProductData(developerId, Lists.newArrayList(productId))
+            .get(productId), removedIds);
+      }
+
+      List<ProductDataView> result = withoutRemoved(dataViews, removedIds);
+
+      Map<String, List<ProductDataView>> productData = Maps.newHashMap();
+      productData.put(productId, result);
+      cacheApplication.fillProductData(developerId, productData, generation);
+      return result;
+    });
+  }
+
   /**
    * Gets data definitions by productId.
    *
@@ -145,47 +294,282 @@ public class ProductQueryApplication {
     return count;
   }
 
+  /**
+   * Refresh products of the developer in background if the cached ones are soft expired.
+   * 请求线程直接返回旧值，不等待数据库和data-definition；同一个developer同时只有一个刷新任务，
+   * 线程池满时放弃这次刷新。
+   *
+   * @param developerId the developerId
+   * @param cached the cached products
+   */
+  private void refreshIfStale(String developerId, CacheEntry<List<ProductView>> cached) {
+    if (!cached.isStale() || !refreshing.add(developerId)) {
+      return;
+    }
+
+    LOG.debug("Products of developer: {} are stale, refresh in background.", developerId);
+
+    try {
+      cacheRefreshExecutor.execute(() -> {
+        try {
+          fetchProducts(developerId);
+        } catch (RuntimeException ex) {
+          LOG.warn("Refresh products of developer: {} failed.", developerId, ex);
+        } finally {
+          refreshing.remove(developerId);
+        }
+      });
+    } catch (TaskRejectedException ex) {
+      LOG.debug("Refresh executor is busy, skip refresh for developer: {}.", developerId);
+      refreshing.remove(developerId);
+    }
+  }
+
+  /**
+   * Refresh soft-expired data definitions of the products in background.
+   * 与产品的后台刷新相同：请求线程直接返回旧值，同样的一组产品同时只有一个刷新任务，线程池满时放弃。
+   *
+   * @param developerId the developer id
+   * @param productIds the products whose data definitions are stale
+   */
+  private void refreshDataInBackground(String developerId, List<String> productIds) {
+    String key = developerId + ":" + String.join(",", productIds);
+    if (!refreshing.add("data:" + key)) {
+      return;
+    }
+
+    LOG.debug("ProductData of products: {} are stale, refresh in background.", productIds);
+
+    try {
+      cacheRefreshExecutor.execute(() -> {
+        try {
+          productDataLoader.load(key, () -> loadProductData(developerId, productIds));
+        } catch (RuntimeException ex) {
+          LOG.warn("Refresh productData of products: {} failed.", productIds, ex);
+        } finally {
+          refreshing.remove("data:" + key);
+        }
+      });
+    } catch (TaskRejectedException ex) {
+      LOG.debug("Refresh executor is busy, skip refresh for products: {}.", productIds);
+      refreshing.remove("data:" + key);
+    }
+  }
+
   /**
    * Fetch product by developerId.
+   * 同一个developer并发的加载会被合并为一次。
    *
    * @param developerId the developerId
    * @return list build ProductView
    */
   private List<ProductView> fetchProducts(String developerId) {
+    return productsLoader.load(developerId, () -> loadProducts(developerId));
+  }
+
+  /**
+   * Load product by developerId from database, then cache them.
+   * 数据定义单独缓存，这里不需要访问data-definition。
+   *
+   * @param developerId the developerId
+   * @return list build ProductView, without data definitions
+   */
+  private List<ProductView> loadProducts(String developerId) {
     LOG.debug("Enter. developerId: {}.", developerId);
 
+    long generation = cacheApplication.getGeneration(developerId);
+
     List<Product> products = productService.getByDeveloperId(developerId);
 
     List<ProductView> result = ProductMapper.toView(products);
 
-    List<String> productIds = products.stream().map(Product::getId).collect(Collectors.toList());
+    cacheApplication.cacheProducts(developerId, result, generation);
 
-    Map<String, List<ProductDataView>> productDataViews =
-        restClient.getProductData(developerId, productIds);
+    LOG.trace("Product: {}.", result);
+    LOG.debug("Exit. product size: {}.", result.size());
 
-    mergeProductData(result, productDataViews);
+    return result;
+  }
 
-    cacheApplication.cacheProducts(developerId, result);
+  /**
+   * Fetch one product by id.
+   * 同一个product并发的加载会被合并为一次。
+   *
+   * @param id the product id
+   * @param developerId the developerId
+   * @return the ProductView, null if not exist or not belong to the developer
+   */
+  private ProductView fetchProduct(String id, String developerId) {
+    return productLoader.load(developerId + ":" + id, () -> loadProduct(id, developerId));
+  }
 
-    LOG.trace("Product: {}.", result);
-    LOG.debug("Exit. product size: {}.", result.size());
+  /**
+   * Load one product from database, then cache it.
+   *
+   * @param id the product id
+   * @param developerId the developerId
+   * @return the ProductView without data definitions, null if not exist or not belong to the
+   *     developer
+   */
+  private ProductView loadProduct(String id, String developerId) {
+    LOG.debug("Enter. id: {}, developerId: {}.", id, developerId);
+
+    long generation = cacheApplication.getGeneration(developerId);
+
+    Product product;
+    try {
+      product = productService.get(id);
+    } catch (NotExistException ex) {
+      LOG.debug("Exit. product: {} not exist.", id);
+      cacheApplication.fillMissingProduct(developerId, id, generation);
+      return null;
+    }
+
+    if (!developerId.equals(product.getDeveloperId())) {
+      LOG.debug("Exit. product: {} not belong to developer: {}.", id, developerId);
+      cacheApplication.fillMissingProduct(developerId, id, generation);
+      return null;
+    }
 
+    ProductView result = ProductMapper.toView(product);
+
+    cacheApplication.fillProduct(developerId, result, generation);
+
+    LOG.debug("Exit. product: {}.", result);
     return result;
   }
 
   /**
-   * Merge ProductData into Product.
+   * Copy the product with it's data definitions, from cache first and then from data-definition.
    *
-   * @param productViews list build Product
-   * @param productDataViews list build ProductData
+   * @param developerId the developer id
+   * @param product the product view without data definitions
+   * @return the product view with data definitions
    */
-  private void mergeProductData(List<ProductView> productViews,
-      Map<String, List<ProductDataView>> productDataViews) {
-    LOG.debug("Enter.");
+  private ProductView withDataDefinitions(String developerId, ProductView product) {
+    return withDataDefinitions(developerId, Lists.newArrayList(product)).get(0);
+  }
 
-    productViews.stream().forEach(
-        product -> product.setDataDefinitions(productDataViews.get(product.getId())));
+  /**
+   * Copy the products with their data definitions.
+   * 先读取数据定义的缓存，没有缓存的一次性从data-definition获取并缓存。
+   *
+   * @param developerId the developer id
+   * @param products the product views without data definitions
+   * @return the product views with data definitions
+   */
+  private List<ProductView> withDataDefinitions(String developerId, List<ProductView> products) {
+    if (products.isEmpty()) {
+      return products;
+    }
+
+    List<String> productIds =
+        products.stream().map(ProductView::getId).collect(Collectors.toList());
+
+    Map<String, CacheEntry<List<ProductDataView>>> cached =
+        cacheApplication.getProductData(developerId, productIds);
+
+    Map<String, List<ProductDataView>> productData = Maps.newHashMap();
+    cached.entrySet().stream()
+        .forEach(entry -> productData.put(entry.getKey(), entry.getValue().getValue()));
+
+    List<String> stale = cached.entrySet().stream()
+        .filter(entry -> entry.getValue().isStale())
+        .map(Map.Entry::getKey)
+        .collect(Collectors.toList());
+
+    if (!stale.isEmpty()) {
+      refreshDataInBackground(developerId, stale);
+    }
+
+    List<String> notCached = productIds.stream()
+        .filter(productId -> !productData.containsKey(productId))
+        .collect(Collectors.toList());
+
+    if (!notCached.isEmpty()) {
+      LOG.debug("ProductData cache fail, get from data-definition. productIds: {}.", notCached);
+      productData.putAll(productDataLoader.load(developerId + ":" + String.join(",", notCached),
+          () -> loadProductData(developerId, notCached)));
+    }
+
+    return products.stream()
+        .map(product -> ProductMapper.toView(product, productData.get(product.getId())))
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Load data definitions of the products from data-definition, then cache them.
+   *
+   * @param developerId the developer id
+   * @param productIds the product ids
+   * @return the data definitions, key is productId
+   */
+  private Map<String, List<ProductDataView>> loadProductData(String developerId,
+      List<String> productIds) {
+    LOG.debug("Enter. developerId: {}, productIds: {}.", developerId, productIds);
+
+    long generation = cacheApplication.getGeneration(developerId);
+
+    Map<String, List<ProductDataView>> dataViews;
+    try {
+      if (productIds.size() == 1) {
+        dataViews = Maps.newHashMap();
+        dataViews.put(productIds.get(0),
+            restClient.getProductData(developerId, productIds.get(0)));
+      } else {
+        dataViews = restClient.getProductData(developerId, productIds);
+      }
+    } catch (RestClientException ex) {
+      LOG.warn("Get data definition of products: {} failed, use last known.", productIds, ex);
+      return lastKnownProductData(developerId, productIds);
+    }
+
+    // 没有数据定义的产品也缓存一个空列表
+    Map<String, List<ProductDataView>> result = Maps.newHashMap();
+    productIds.stream().forEach(productId ->
+        result.put(productId, dataViews.getOrDefault(productId, Lists.newArrayList())));
 
-    LOG.debug("Exit.");
+    cacheApplication.fillProductData(developerId, result, generation);
+
+    LOG.debug("Exit. productData size: {}.", result.size());
+    return result;
+  }
+
+  /**
+   * Remove the data definitions removed from the product.
+   *
+   * @param dataViews the data definitions
+   * @param removedIds the removed data definition ids
+   * @return the data definitions not removed
+   */
+  private static List<ProductDataView> withoutRemoved(List<ProductDataView> dataViews,
+      List<String> removedIds) {
+    if (removedIds.isEmpty()) {
+      return dataViews;
+    }
+
+    return dataViews.stream()
+        .filter(dataView -> !removedIds.contains(dataView.getId()))
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Gets the last known data definitions of the products, used when data-definition failed.
+   * 降级的结果只返回给调用方，不写入缓存，避免把"没有数据定义"缓存下来。
+   *
+   * @param developerId the developer id
+   * @param productIds the product ids
+   * @return the data definitions, key is productId, empty list if never read
+   */
+  private Map<String, List<ProductDataView>> lastKnownProductData(String developerId,
+      List<String> productIds) {
+    Map<String, List<ProductDataView>> lastKnown =
+        cacheApplication.getLastKnownProductData(developerId, productIds);
+
+    Map<String, List<ProductDataView>> result = Maps.newHashMap();
+    productIds.stream().forEach(productId ->
+        result.put(productId, lastKnown.getOrDefault(productId, Lists.newArrayList())));
+
+    return result;
   }
 }
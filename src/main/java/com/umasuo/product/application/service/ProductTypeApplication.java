@@ -1,23 +1,33 @@
 package com.umasuo.product.application.service;
 
+import com.google.common.collect.Lists;
 import com.umasuo.exception.NotExistException;
 import com.umasuo.product.application.dto.CommonDataView;
 import com.umasuo.product.application.dto.ProductTypeDraft;
 import com.umasuo.product.application.dto.ProductTypeView;
 import com.umasuo.product.application.dto.mapper.ProductTypeMapper;
 import com.umasuo.product.domain.model.ProductType;
+import com.umasuo.product.domain.service.OutboxService;
 import com.umasuo.product.domain.service.ProductTypeService;
+import com.umasuo.product.infrastructure.cache.ProductTypeCatalog;
 import com.umasuo.product.infrastructure.update.UpdateAction;
 import com.umasuo.product.infrastructure.update.UpdaterService;
+import com.umasuo.product.infrastructure.util.FutureUtils;
 import com.umasuo.product.infrastructure.validator.VersionValidator;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.client.RestClientException;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 
 /**
  * ProductType application.
@@ -55,6 +65,18 @@ public class ProductTypeApplication {
   @Autowired
   private transient UpdaterService updaterService;
 
+  /**
+   * OutboxService.
+   */
+  @Autowired
+  private transient OutboxService outboxService;
+
+  /**
+   * TransactionTemplate, used to save product type and outbox events in one transaction.
+   */
+  @Autowired
+  private transient TransactionTemplate transactionTemplate;
+
   /**
    * Create product type view.
    *
@@ -70,7 +92,7 @@ public class ProductTypeApplication {
 
     ProductTypeView result = ProductTypeMapper.toView(newProductType);
 
-    cacheApplication.deleteProductTypes();
+    rebuildCatalog(true);
 
     LOG.debug("Exit. new productType id: {}.", result.getId());
     return result;
@@ -89,11 +111,14 @@ public class ProductTypeApplication {
 
     VersionValidator.checkVersion(version, productType.getVersion());
 
-    productTypeService.delete(id);
+    // 数据定义的删除记录到outbox，由后台任务投递
+    transactionTemplate.execute(status -> {
+      productTypeService.delete(id);
+      outboxService.addDeleteAllProductTypeData(id);
+      return null;
+    });
 
-    restClient.deleteProductTypeData(id);
-
-    cacheApplication.deleteProductTypes();
+    rebuildCatalog(true);
 
     LOG.debug("Exit.");
   }
@@ -113,16 +138,26 @@ public class ProductTypeApplication {
 
     VersionValidator.checkVersion(version, valueInDb.getVersion());
 
-    actions.stream().forEach(action -> updaterService.handle(valueInDb, action));
+    List<String> dataIds = valueInDb.getDataIds() == null
+        ? Lists.newArrayList() : Lists.newArrayList(valueInDb.getDataIds());
 
-    ProductType product = productTypeService.save(valueInDb);
+    actions.stream().forEach(action -> updaterService.handle(valueInDb, action));
 
-    cacheApplication.deleteProductTypes();
+    // 被移除的数据定义在保存产品类型的事务中记录到outbox，由后台任务删除
+    List<String> removedIds = dataIds.stream()
+        .filter(dataId -> valueInDb.getDataIds() == null
+            || !valueInDb.getDataIds().contains(dataId))
+        .collect(Collectors.toList());
 
-    Map<String, List<CommonDataView>> dataDefinitionViews =
-        restClient.getProductTypeData();
+    ProductType product = transactionTemplate.execute(status -> {
+      ProductType savedProductType = productTypeService.save(valueInDb);
+      if (!removedIds.isEmpty()) {
+        outboxService.addDeleteProductTypeData(id, removedIds);
+      }
+      return savedProductType;
+    });
 
-    ProductTypeView updatedProduct = ProductTypeMapper.toView(product, dataDefinitionViews);
+    ProductTypeView updatedProduct = rebuildCatalog(true).get(product.getId());
 
     LOG.trace("updated productType: {}", updatedProduct);
     LOG.debug("Exit.");
@@ -138,25 +173,10 @@ public class ProductTypeApplication {
   public List<ProductTypeView> getAll() {
     LOG.debug("Enter.");
 
-    // get from redis
-    List<ProductTypeView> cacheProductTypes = cacheApplication.getAllProductType();
-
-    if (cacheProductTypes.isEmpty()) {
-      LOG.debug("Cache fail. Get from database.");
-      List<ProductType> productTypes = productTypeService.getAll();
-
-      // 调用data-definition的api获取对应id的CommonDataView
-      Map<String, List<CommonDataView>> dataDefinitionViews =
-          restClient.getProductTypeData();
-
-      cacheProductTypes = ProductTypeMapper.toView(productTypes, dataDefinitionViews);
+    List<ProductTypeView> result = getCatalog().getAll();
 
-      cacheApplication.cacheProductType(cacheProductTypes);
-
-    }
-
-    LOG.debug("Exit. productType size: {}.", cacheProductTypes.size());
-    return cacheProductTypes;
+    LOG.debug("Exit. productType size: {}.", result.size());
+    return result;
   }
 
   /**
@@ -167,11 +187,8 @@ public class ProductTypeApplication {
    */
   public ProductTypeView get(String id) {
     LOG.debug("Enter. id: {}.", id);
-    List<ProductTypeView> productTypeViews = getAll();
 
-    ProductTypeView result =
-        productTypeViews.stream().filter(productTypeView -> id.equals(productTypeView.getId()))
-            .findAny().orElse(null);
+    ProductTypeView result = getCatalog().get(id);
 
     if (result == null) {
       LOG.debug("Can not find productType: {}.", id);
@@ -181,4 +198,87 @@ public class ProductTypeApplication {
     LOG.debug("Exit. productType: {}.", result);
     return result;
   }
+
+  /**
+   * Rebuild the ProductType catalog after it's data definitions were changed in data-definition.
+   */
+  public void refreshCatalog() {
+    LOG.debug("Enter.");
+
+    rebuildCatalog(true);
+
+    LOG.debug("Exit.");
+  }
+
+  /**
+   * 服务启动后预热产品类型缓存，避免第一个请求去读数据库和data-definition。
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  public void warmUp() {
+    LOG.debug("Enter.");
+
+    try {
+      ProductTypeCatalog catalog = getCatalog();
+      LOG.debug("Exit. productType size: {}.", catalog.getAll().size());
+    } catch (RuntimeException ex) {
+      LOG.warn("Warm up productType cache failed, will load on first request.", ex);
+    }
+  }
+
+  /**
+   * Get the ProductType catalog from cache, load from database if not cached.
+   *
+   * @return the product type catalog
+   */
+  private ProductTypeCatalog getCatalog() {
+    ProductTypeCatalog catalog = cacheApplication.getProductTypeCatalog();
+
+    if (catalog == null) {
+      LOG.debug("Cache fail. Get from database.");
+      catalog = rebuildCatalog(false);
+    }
+
+    return catalog;
+  }
+
+  /**
+   * Rebuild the ProductType catalog from database and data-definition, and replace the cache.
+   * 修改产品类型后直接用新值覆盖缓存，而不是删除后等下一个请求重新加载。
+   * data-definition不可用时使用最后一次成功读取的数据定义，这样的结果不写入缓存；
+   * 如果是修改后的重建，缓存里的旧值也要删除。
+   * 缓存未命中时的加载先读取版本号，加载期间有修改则不写入缓存。
+   *
+   * @param changed is the product type changed
+   * @return the rebuilt product type catalog
+   */
+  private ProductTypeCatalog rebuildCatalog(boolean changed) {
+    long generation = changed ? 0L : cacheApplication.getProductTypeGeneration();
+
+    // 调用data-definition的api获取对应id的CommonDataView，同时查询数据库
+    CompletableFuture<Map<String, List<CommonDataView>>> dataDefinitionViews =
+        restClient.getProductTypeDataAsync();
+
+    List<ProductType> productTypes = productTypeService.getAll();
+
+    Map<String, List<CommonDataView>> productTypeData;
+    try {
+      productTypeData = FutureUtils.join(dataDefinitionViews);
+    } catch (RestClientException ex) {
+      LOG.warn("Fetch platform data failed, use last known.", ex);
+
+      if (changed) {
+        cacheApplication.evictProductTypes();
+      }
+
+      return ProductTypeCatalog.of(ProductTypeMapper.toView(productTypes,
+          cacheApplication.getLastKnownProductTypeData()));
+    }
+
+    cacheApplication.rememberProductTypeData(productTypeData);
+
+    List<ProductTypeView> views = ProductTypeMapper.toView(productTypes, productTypeData);
+
+    return changed ? cacheApplication.replaceProductTypes(views)
+        : cacheApplication.fillProductTypes(views, generation);
+  }
 }
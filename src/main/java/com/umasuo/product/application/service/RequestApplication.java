@@ -47,12 +47,6 @@ public class RequestApplication {
   @Autowired
   private transient ProductService productService;
 
-  /**
-   * CacheApplication.
-   */
-  @Autowired
-  private transient CacheApplication cacheApplication;
-
   /**
    * The ProductCommandApplication.
    */
@@ -91,9 +85,9 @@ public class RequestApplication {
         break;
     }
 
-    productService.save(product);
+    Product savedProduct = productService.save(product);
 
-    cacheApplication.deleteProducts(developerId);
+    productCommandApplication.refreshCache(savedProduct);
 
     LOG.debug("Exit.");
 
@@ -5,32 +5,62 @@ import static org.springframework.http.HttpMethod.GET;
 import static org.springframework.http.HttpMethod.POST;
 import static org.springframework.http.HttpMethod.PUT;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.umasuo.exception.ParametersException;
 import com.umasuo.product.application.dto.CommonDataView;
 import com.umasuo.product.application.dto.CopyRequest;
 import com.umasuo.product.application.dto.ProductDataView;
 import com.umasuo.product.application.dto.action.AddDataDefinition;
 import com.umasuo.product.application.dto.action.AddProductTypeData;
+import com.umasuo.product.infrastructure.client.Bulkhead;
+import com.umasuo.product.infrastructure.client.CachedResponse;
+import com.umasuo.product.infrastructure.client.CircuitBreaker;
+import com.umasuo.product.infrastructure.client.HedgePolicy;
+import com.umasuo.product.infrastructure.client.LoadBalancer;
+import com.umasuo.product.infrastructure.client.RequestCollapser;
+import com.umasuo.product.infrastructure.client.ServiceUnavailableException;
 import com.umasuo.product.infrastructure.update.UpdateRequest;
+import com.umasuo.product.infrastructure.util.FutureUtils;
 import com.umasuo.product.infrastructure.util.HttpEntityUtils;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.InvalidMediaTypeException;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.web.client.AsyncRestTemplate;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 /**
  * Rest client，用于调用其它服务的接口.
@@ -44,22 +74,232 @@ public class RestClient {
   private final static Logger LOG = LoggerFactory.getLogger(RestClient.class);
 
   /**
-   * Data-definition service uri.
+   * Type of platform data definition.
+   */
+  private static final TypeReference<Map<String, List<CommonDataView>>> PLATFORM_DATA_TYPE =
+      new TypeReference<Map<String, List<CommonDataView>>>() {
+      };
+
+  /**
+   * Data-definition service uris, separated by comma.
    */
   @Value("${datadefinition.service.uri:http://data-definition}")
-  private transient String dataDefinitionUrl;
+  private transient String[] dataDefinitionUrls;
+
+  /**
+   * Consecutive failures to eject a data-definition instance.
+   */
+  @Value("${datadefinition.client.ejection.failure-threshold:3}")
+  private transient int ejectionFailureThreshold;
+
+  /**
+   * How long an instance is ejected.
+   */
+  @Value("${datadefinition.client.ejection.eject-millis:30000}")
+  private transient long ejectMillis;
+
+  /**
+   * Max percent of ejected instances.
+   */
+  @Value("${datadefinition.client.ejection.max-percent:50}")
+  private transient int maxEjectionPercent;
+
+  /**
+   * RestTemplate, backed by the pooled http client.
+   */
+  @Autowired
+  private transient RestTemplate restTemplate;
+
+  /**
+   * AsyncRestTemplate, backed by the non-blocking http client.
+   */
+  @Autowired
+  private transient AsyncRestTemplate asyncRestTemplate;
+
+  /**
+   * ObjectMapper, used to parse platform data only when it changed.
+   */
+  @Autowired
+  private transient ObjectMapper objectMapper;
+
+  /**
+   * Last platform data and it's validators.
+   */
+  private final transient AtomicReference<CachedResponse<Map<String, List<CommonDataView>>>>
+      platformData = new AtomicReference<>();
+
+  /**
+   * Platform data requests answered with 304.
+   */
+  private final transient AtomicLong platformDataNotModified = new AtomicLong();
+
+  /**
+   * Platform data responses with the same content as the local copy.
+   */
+  private final transient AtomicLong platformDataUnchanged = new AtomicLong();
+
+  /**
+   * Platform data responses parsed.
+   */
+  private final transient AtomicLong platformDataChanged = new AtomicLong();
+
+  /**
+   * Window to collect single product data lookups into one batch.
+   */
+  @Value("${datadefinition.client.batch-window-millis:5}")
+  private transient long batchWindowMillis;
+
+  /**
+   * Max products in one batch lookup.
+   */
+  @Value("${datadefinition.client.batch-max-size:100}")
+  private transient int batchMaxSize;
+
+  /**
+   * Consecutive failures to open the circuit of data-definition.
+   */
+  @Value("${datadefinition.client.breaker.failure-threshold:5}")
+  private transient int breakerFailureThreshold;
+
+  /**
+   * How long the circuit stays open before a trial call.
+   */
+  @Value("${datadefinition.client.breaker.open-millis:10000}")
+  private transient long breakerOpenMillis;
+
+  /**
+   * Max concurrent product data lookups.
+   */
+  @Value("${datadefinition.client.bulkhead.product-data:30}")
+  private transient int productDataConcurrency;
+
+  /**
+   * Max concurrent platform data lookups.
+   */
+  @Value("${datadefinition.client.bulkhead.product-type-data:5}")
+  private transient int productTypeDataConcurrency;
+
+  /**
+   * Max concurrent create, update and delete calls.
+   */
+  @Value("${datadefinition.client.bulkhead.write:15}")
+  private transient int writeConcurrency;
+
+  /**
+   * Send a hedge for slow product data lookups.
+   */
+  @Value("${datadefinition.client.hedge.enabled:false}")
+  private transient boolean hedgeEnabled;
+
+  /**
+   * Percentile of recent product data lookup latencies to wait before hedging.
+   */
+  @Value("${datadefinition.client.hedge.percentile:95}")
+  private transient double hedgePercentile;
+
+  /**
+   * Min delay before hedging.
+   */
+  @Value("${datadefinition.client.hedge.min-delay-millis:10}")
+  private transient long hedgeMinDelayMillis;
+
+  /**
+   * Hedges allowed for each lookup.
+   */
+  @Value("${datadefinition.client.hedge.budget-ratio:0.1}")
+  private transient double hedgeBudgetRatio;
+
+  /**
+   * Max burst of hedges.
+   */
+  @Value("${datadefinition.client.hedge.budget-max:10}")
+  private transient double hedgeBudgetMax;
+
+  /**
+   * Number of recent latencies to get the percentile.
+   */
+  @Value("${datadefinition.client.hedge.window-size:1000}")
+  private transient int hedgeWindowSize;
+
+  /**
+   * Circuit breaker of data-definition.
+   */
+  private transient CircuitBreaker circuitBreaker;
+
+  /**
+   * Bulkhead of product data lookups.
+   */
+  private transient Bulkhead productDataBulkhead;
+
+  /**
+   * Bulkhead of platform data lookups.
+   */
+  private transient Bulkhead productTypeDataBulkhead;
+
+  /**
+   * Bulkhead of create, update and delete calls.
+   */
+  private transient Bulkhead writeBulkhead;
+
+  /**
+   * Balance calls across data-definition instances.
+   */
+  private transient LoadBalancer loadBalancer;
+
+  /**
+   * Hedge policy of product data lookups.
+   */
+  private transient HedgePolicy productDataHedge;
+
+  /**
+   * Scheduler to send collapsed lookups and hedges.
+   */
+  private transient ScheduledExecutorService batchScheduler;
 
   /**
-   * RestTemplate.
+   * Collapse single product data lookups of the same developer.
    */
-  private transient RestTemplate restTemplate = new RestTemplate();
+  private transient RequestCollapser<String, String, List<ProductDataView>> productDataCollapser;
+
+  /**
+   * Build the load balancer, circuit breaker, bulkheads, hedge policy and request collapser.
+   * 每类调用单独限制并发，慢的查询不会占满连接池，影响创建和删除。
+   */
+  @PostConstruct
+  public void init() {
+    loadBalancer = new LoadBalancer(Arrays.asList(dataDefinitionUrls), ejectionFailureThreshold,
+        ejectMillis, maxEjectionPercent);
+    circuitBreaker = new CircuitBreaker("data-definition", breakerFailureThreshold,
+        breakerOpenMillis);
+    productDataBulkhead = new Bulkhead(productDataConcurrency);
+    productTypeDataBulkhead = new Bulkhead(productTypeDataConcurrency);
+    writeBulkhead = new Bulkhead(writeConcurrency);
+    productDataHedge = new HedgePolicy(hedgeEnabled, hedgePercentile, hedgeMinDelayMillis,
+        hedgeBudgetRatio, hedgeBudgetMax, hedgeWindowSize);
+
+    batchScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+        .setNameFormat("product-data-batch-%d").setDaemon(true).build());
+
+    productDataCollapser = new RequestCollapser<>(batchScheduler, batchWindowMillis,
+        batchMaxSize, this::getProductDataAsync);
+  }
+
+  /**
+   * Stop the scheduler.
+   */
+  @PreDestroy
+  public void destroy() {
+    batchScheduler.shutdown();
+  }
 
   /**
    * Create data definition.
+   * 只有data-definition返回4xx时才是参数错误，熔断、并发已满和其它错误直接抛出。
    *
    * @param developerId the developer id
    * @param action the action
    * @return the string
+   * @throws ServiceUnavailableException if the circuit is open or the bulkhead is full
    */
   public String createDataDefinition(String developerId, AddDataDefinition action) {
     LOG.debug("Enter.");
@@ -70,10 +310,10 @@ public class RestClient {
 
     try {
 
-      ResponseEntity response =
-          restTemplate.exchange(dataDefinitionUrl, POST, entity, Map.class);
+      ResponseEntity response = call(writeBulkhead, "",
+          url -> restTemplate.exchange(url, POST, entity, Map.class));
       newDataDefinitionId = ((LinkedHashMap) response.getBody()).get("id").toString();
-    } catch (RestClientException ex) {
+    } catch (HttpClientErrorException ex) {
       LOG.debug("Wrong when create dataDefinition.", ex);
       throw new ParametersException("Something wrong when create dataDefinition");
     }
@@ -84,6 +324,7 @@ public class RestClient {
 
   /**
    * 设备创建时调用, 将定义好的数据定义复制一分到新定义的设备名下，如果复制出错，返回空的，待后面重新添加，不妨碍设备创建.
+   * 调用方需要复制得到的新id，所以不能放到outbox中异步执行。
    *
    * @param developerId 开发者ID
    * @param request the request
@@ -96,51 +337,47 @@ public class RestClient {
 
     HttpEntity entity = HttpEntityUtils.build(developerId, request);
 
-    String url = dataDefinitionUrl + "/copy";
-
-    LOG.debug("url: {}.", url);
-
     try {
-      HttpEntity<List<String>> response = restTemplate.exchange(url, POST, entity,
-          new ParameterizedTypeReference<List<String>>() {
-          });
+      HttpEntity<List<String>> response = call(writeBulkhead, "/copy",
+          url -> restTemplate.exchange(url, POST, entity,
+              new ParameterizedTypeReference<List<String>>() {
+              }));
       result = Lists.newArrayList(response.getBody());
     } catch (RestClientException ex) {
       LOG.warn("Copy data definition failed.", ex);
-      //todo add message or retry
     }
     return result;
   }
 
   /**
    * 根据productId删除该产品所有的DataDefinition.
+   * 只由outbox的投递任务调用，失败时抛出异常以便重试。
    *
    * @param developerId the developer id
    * @param productId the product id
+   * @throws RestClientException if delete failed
    */
   public void deleteAllDataDefinition(String developerId, String productId) {
     LOG.debug("Enter. developerId: {}, productId: {}.", developerId, productId);
 
     HttpEntity entity = HttpEntityUtils.build(developerId);
 
-    String url = UriComponentsBuilder.fromHttpUrl(dataDefinitionUrl)
+    String path = UriComponentsBuilder.fromPath("")
         .queryParam("productId", productId).toUriString();
 
-    try {
-      restTemplate.exchange(url, DELETE, entity, Void.class);
-    } catch (RestClientException ex) {
-      LOG.debug("Something wrong when delete product dataDefinition.", ex);
-    }
+    call(writeBulkhead, path, url -> restTemplate.exchange(url, DELETE, entity, Void.class));
 
     LOG.debug("Exit.");
   }
 
   /**
    * 根据id和productId删除对应的DataDefinition。
+   * 只由outbox的投递任务调用，失败时抛出异常以便重试。
    *
    * @param developerId the developer id
    * @param productId the product id
    * @param removeId the remove id
+   * @throws RestClientException if delete failed
    */
   public void deleteDataDefinition(String developerId, String productId, String removeId) {
     LOG.debug("Enter. developerId: {}, productId: {}, removed dataDefinition: {}.",
@@ -148,15 +385,10 @@ public class RestClient {
 
     HttpEntity entity = HttpEntityUtils.build(developerId);
 
-    String url = UriComponentsBuilder.fromHttpUrl(dataDefinitionUrl + "/" + removeId)
+    String path = UriComponentsBuilder.fromPath("/" + removeId)
         .queryParam("productId", productId).toUriString();
 
-    try {
-      restTemplate.exchange(url, DELETE, entity, Void.class);
-
-    } catch (RestClientException ex) {
-      LOG.debug("Something wrong when delete product dataDefinition.", ex);
-    }
+    call(writeBulkhead, path, url -> restTemplate.exchange(url, DELETE, entity, Void.class));
 
     LOG.debug("Exit.");
   }
@@ -174,9 +406,8 @@ public class RestClient {
 
     HttpEntity entity = HttpEntityUtils.build(developerId, request);
 
-    String url = dataDefinitionUrl + "/" + dataDefinitionId;
-
-    restTemplate.exchange(url, PUT, entity, Void.class);
+    call(writeBulkhead, "/" + dataDefinitionId,
+        url -> restTemplate.exchange(url, PUT, entity, Void.class));
 
     LOG.debug("Exit. update done.");
   }
@@ -187,74 +418,27 @@ public class RestClient {
    * @param developerId the developer id
    * @param productIds the product ids
    * @return the product data
+   * @throws RestClientException if data-definition failed or is unavailable
    */
   public Map<String, List<ProductDataView>> getProductData(String developerId,
       List<String> productIds) {
-
-    LOG.debug("Enter. developerId: {}, productIds: {}.", developerId, productIds);
-
-    HttpEntity entity = HttpEntityUtils.build(developerId);
-
-    UriComponentsBuilder builder = UriComponentsBuilder.fromHttpUrl(dataDefinitionUrl)
-        .queryParam("productIds", String.join(",", productIds));
-
-    String url = builder.build().encode().toUriString();
-
-    LOG.debug("data definition url: {}.", url);
-
-    Map<String, List<ProductDataView>> result = Maps.newHashMap();
-
-    try {
-
-      ResponseEntity<Map<String, List<ProductDataView>>> responseEntity =
-          restTemplate.exchange(url, GET, entity,
-              new ParameterizedTypeReference<Map<String, List<ProductDataView>>>() {
-              });
-
-      result = responseEntity.getBody();
-    } catch (RestClientException ex) {
-      LOG.debug("Can not get data definition: {}", url, ex);
-    }
-
-    LOG.debug("Exit. productData size: {}.", result.size());
-
-    return result;
+    return FutureUtils.join(getProductDataAsync(developerId, productIds));
   }
 
   /**
    * 根据productId获取该product对应的所有DataDefinition.
+   * 同时查询的多个产品会被合并成一次批量查询。
    *
    * @param developerId the developer id
    * @param productId the product id
    * @return the product data
+   * @throws RestClientException if data-definition failed or is unavailable
    */
   public List<ProductDataView> getProductData(String developerId, String productId) {
-
-    LOG.debug("Enter. developerId: {}, productId: {}.", developerId, productId);
-
-    HttpEntity entity = HttpEntityUtils.build(developerId);
-
-    UriComponentsBuilder builder = UriComponentsBuilder.fromHttpUrl(dataDefinitionUrl)
-        .queryParam("productId", productId);
-
-    String url = builder.build().encode().toUriString();
-    List<ProductDataView> result = Lists.newArrayList();
-    try {
-
-      ResponseEntity<List<ProductDataView>> responseEntity = restTemplate.exchange(url, GET,
-          entity, new ParameterizedTypeReference<List<ProductDataView>>() {
-          });
-
-      result = responseEntity.getBody();
-    } catch (RestClientException ex) {
-      LOG.debug("Can not get data definition by url: {}.", url, ex);
-    }
-
-    LOG.debug("Exit. productData size: {}.", result.size());
-
-    return result;
+    return FutureUtils.join(getProductDataAsync(developerId, productId));
   }
 
+
   /**
    * Check definition exist.
    *
@@ -265,13 +449,14 @@ public class RestClient {
   public Map<String, Boolean> checkDefinitionExist(String developerId, List<String> definitionIds) {
     LOG.debug("Enter. developerId: {}, definitionIds: {}.", developerId, definitionIds);
 
-    UriComponentsBuilder builder = UriComponentsBuilder.fromHttpUrl(dataDefinitionUrl)
+    UriComponentsBuilder builder = UriComponentsBuilder.fromPath("")
         .queryParam("developerId", developerId)
         .queryParam("dataIds", String.join(",", definitionIds));
 
-    String url = builder.build().encode().toUriString();
+    String path = builder.build().encode().toUriString();
 
-    Map<String, Boolean> result = restTemplate.getForObject(url, Map.class);
+    Map<String, Boolean> result =
+        call(productDataBulkhead, path, url -> restTemplate.getForObject(url, Map.class));
 
     LOG.debug("Exit. result: {}.", result);
 
@@ -281,9 +466,11 @@ public class RestClient {
 
   /**
    * Create product type data string.
+   * 与createDataDefinition相同，只有4xx响应转换为参数错误。
    *
    * @param action the action
    * @return the string
+   * @throws ServiceUnavailableException if the circuit is open or the bulkhead is full
    */
   public String createProductTypeData(AddProductTypeData action) {
     LOG.debug("Enter. action: {}.", action);
@@ -295,11 +482,10 @@ public class RestClient {
     String newDataDefinitionId = null;
 
     try {
-      String url = dataDefinitionUrl + "/platform";
-      LOG.debug("url: {}.", url);
-      ResponseEntity response = restTemplate.exchange(url, POST, entity, Map.class);
+      ResponseEntity response = call(writeBulkhead, "/platform",
+          url -> restTemplate.exchange(url, POST, entity, Map.class));
       newDataDefinitionId = ((LinkedHashMap) response.getBody()).get("id").toString();
-    } catch (InvalidMediaTypeException | RestClientException ex) {
+    } catch (InvalidMediaTypeException | HttpClientErrorException ex) {
       LOG.debug("Wrong when create dataDefinition.", ex);
       throw new ParametersException("Wrong when create dataDefinition, maybe dataId exist");
     }
@@ -311,40 +497,36 @@ public class RestClient {
 
   /**
    * Delete platform data.
+   * 只由outbox的投递任务调用，失败时抛出异常以便重试。
    *
    * @param productTypeId the product type id
+   * @throws RestClientException if delete failed
    */
   public void deleteProductTypeData(String productTypeId) {
     LOG.debug("Enter. productTypeId: {}.", productTypeId);
 
-    String url = UriComponentsBuilder.fromHttpUrl(dataDefinitionUrl + "/platform")
+    String path = UriComponentsBuilder.fromPath("/platform")
         .queryParam("productTypeId", productTypeId).toUriString();
 
-    try {
-      restTemplate.delete(url);
-    } catch (RestClientException ex) {
-      LOG.debug("Something wrong when delete product type dataDefinition.", ex);
-    }
+    call(writeBulkhead, path, url -> restTemplate.exchange(url, DELETE, null, Void.class));
 
     LOG.debug("Exit. delete done.");
   }
 
   /**
    * Delete platform data.
+   * 只由outbox的投递任务调用，失败时抛出异常以便重试。
    *
    * @param productTypeId the product type id
    * @param dataDefinitionId the data definition id
+   * @throws RestClientException if delete failed
    */
   public void deleteProductTypeData(String productTypeId, String dataDefinitionId) {
     LOG.debug("Enter. productTypeId: {}, dataDefinitionId: {}.", productTypeId, dataDefinitionId);
-    String url = UriComponentsBuilder
-        .fromHttpUrl(dataDefinitionUrl + "/platform/" + dataDefinitionId)
+    String path = UriComponentsBuilder
+        .fromPath("/platform/" + dataDefinitionId)
         .queryParam("productTypeId", productTypeId).toUriString();
-    try {
-      restTemplate.delete(url);
-    } catch (RestClientException ex) {
-      LOG.debug("Something wrong when delete product type dataDefinition.", ex);
-    }
+    call(writeBulkhead, path, url -> restTemplate.exchange(url, DELETE, null, Void.class));
 
     LOG.debug("Exit. delete done.");
   }
@@ -360,9 +542,8 @@ public class RestClient {
 
     HttpEntity entity = HttpEntityUtils.build(request);
 
-    String url = dataDefinitionUrl + "/platform/" + dataDefinitionId;
-
-    restTemplate.exchange(url, PUT, entity, Void.class);
+    call(writeBulkhead, "/platform/" + dataDefinitionId,
+        url -> restTemplate.exchange(url, PUT, entity, Void.class));
 
     LOG.debug("Exit. update done.");
   }
@@ -371,28 +552,275 @@ public class RestClient {
    * Gets platform data definition.
    *
    * @return the platform data definition
+   * @throws RestClientException if data-definition failed or is unavailable
    */
   public Map<String, List<CommonDataView>> getProductTypeData() {
+    return FutureUtils.join(getProductTypeDataAsync());
+  }
+
+  /**
+   * Gets product data without blocking the calling thread.
+   * 出错时future以RestClientException结束，由调用方决定如何降级，空的结果不能当作没有数据定义缓存。
+   * 开启对冲时，请求比最近的大部分请求慢就向另一个实例再发一个，使用先返回的结果。
+   *
+   * @param developerId the developer id
+   * @param productIds the product ids
+   * @return the future of product data
+   */
+  public CompletableFuture<Map<String, List<ProductDataView>>> getProductDataAsync(
+      String developerId, List<String> productIds) {
+    LOG.debug("Enter. developerId: {}, productIds: {}.", developerId, productIds);
+
+    String path = UriComponentsBuilder.fromPath("")
+        .queryParam("productIds", String.join(",", productIds))
+        .build().encode().toUriString();
+
+    Function<String, ListenableFuture<ResponseEntity<Map<String, List<ProductDataView>>>>> lookup =
+        url -> asyncRestTemplate.exchange(url, GET, HttpEntityUtils.build(developerId),
+            new ParameterizedTypeReference<Map<String, List<ProductDataView>>>() {
+            });
+
+    LoadBalancer.Instance instance = loadBalancer.choose();
+
+    return productDataHedge.call(batchScheduler,
+        () -> callAsync(productDataBulkhead, instance, path, lookup),
+        () -> callAsync(productDataBulkhead, loadBalancer.choose(instance), path, lookup))
+        .thenApply(response -> response.getBody() == null
+            ? Maps.<String, List<ProductDataView>>newHashMap() : response.getBody());
+  }
+
+  /**
+   * 根据productId获取该product对应的所有DataDefinition，不阻塞调用线程。
+   * 同一个developer在几毫秒内的查询会被合并成一次productIds=的批量查询。
+   *
+   * @param developerId the developer id
+   * @param productId the product id
+   * @return the future of product data
+   */
+  public CompletableFuture<List<ProductDataView>> getProductDataAsync(String developerId,
+      String productId) {
+    LOG.debug("Enter. developerId: {}, productId: {}.", developerId, productId);
+
+    return productDataCollapser.submit(developerId, productId)
+        .thenApply(dataViews -> dataViews == null ? Lists.newArrayList() : dataViews);
+  }
+
+
+  /**
+   * Gets platform data definition without blocking the calling thread.
+   * 带上次结果的ETag/Last-Modified发送条件请求，没有变化时服务端返回304，直接使用本地保存的值。
+   * 出错时future以RestClientException结束。
+   *
+   * @return the future of platform data definition, should not be modified
+   */
+  public CompletableFuture<Map<String, List<CommonDataView>>> getProductTypeDataAsync() {
     LOG.debug("Enter.");
-    String url = dataDefinitionUrl + "/platform";
 
-    LOG.debug("Url: {}.", url);
+    CachedResponse<Map<String, List<CommonDataView>>> cached = platformData.get();
+    HttpEntity entity = cached == null ? null : new HttpEntity<>(cached.conditionalHeaders());
+
+    return callAsync(productTypeDataBulkhead, loadBalancer.choose(), "/platform",
+        url -> asyncRestTemplate.exchange(url, GET, entity, byte[].class))
+        .thenApply(response -> readPlatformData(response, cached));
+  }
+
+  /**
+   * Gets the statistics of instances, circuit breaker, bulkheads and hedging.
+   *
+   * @return the statistics
+   */
+  public Map<String, Object> getStats() {
+    Map<String, Object> bulkheads = Maps.newLinkedHashMap();
+    bulkheads.put("productData", productDataBulkhead.getStats());
+    bulkheads.put("productTypeData", productTypeDataBulkhead.getStats());
+    bulkheads.put("write", writeBulkhead.getStats());
+
+    Map<String, Object> conditional = Maps.newLinkedHashMap();
+    conditional.put("notModified", platformDataNotModified.get());
+    conditional.put("unchanged", platformDataUnchanged.get());
+    conditional.put("changed", platformDataChanged.get());
+
+    Map<String, Object> result = Maps.newLinkedHashMap();
+    result.put("instances", loadBalancer.getStats());
+    result.put("circuitBreaker", circuitBreaker.getStats());
+    result.put("bulkhead", bulkheads);
+    result.put("platformData", conditional);
+    result.put("hedge", productDataHedge.getStats());
+
+    return result;
+  }
+
+  /**
+   * Read platform data from the response, parse it only when it changed.
+   * 服务端不支持条件请求时，用内容的hash判断是否变化。
+   *
+   * @param response the response, body is the raw content
+   * @param cached the local copy sent with the request, null if none
+   * @return the platform data
+   */
+  private Map<String, List<CommonDataView>> readPlatformData(ResponseEntity<byte[]> response,
+      CachedResponse<Map<String, List<CommonDataView>>> cached) {
+    if (cached != null && response.getStatusCode() == HttpStatus.NOT_MODIFIED) {
+      LOG.debug("Exit. platform data not modified.");
+      platformDataNotModified.incrementAndGet();
+      return cached.getValue();
+    }
+
+    if (cached != null && cached.isSameContent(response)) {
+      LOG.debug("Exit. platform data unchanged.");
+      platformDataUnchanged.incrementAndGet();
+      platformData.set(cached.revalidated(response));
+      return cached.getValue();
+    }
 
     Map<String, List<CommonDataView>> result = Maps.newHashMap();
+    if (response.getBody() != null && response.getBody().length > 0) {
+      try {
+        result = objectMapper.readValue(response.getBody(), PLATFORM_DATA_TYPE);
+      } catch (IOException ex) {
+        throw new RestClientException("Can not read platform data", ex);
+      }
+    }
+
+    // 同一个值会返回给之后的多个调用方，不能被修改
+    result = Collections.unmodifiableMap(result);
+
+    platformDataChanged.incrementAndGet();
+    platformData.set(CachedResponse.of(response, result));
+
+    LOG.debug("Exit. platform data size: {}.", result.size());
+    return result;
+  }
+
+  /**
+   * Call data-definition through the bulkhead and circuit breaker, on an instance chosen by the
+   * load balancer.
+   *
+   * @param bulkhead the bulkhead of the operation
+   * @param path the path and query after the base url
+   * @param call the call with the full url
+   * @param <T> the result type
+   * @return the result
+   * @throws ServiceUnavailableException if the circuit is open or the bulkhead is full
+   */
+  private <T> T call(Bulkhead bulkhead, String path, Function<String, T> call) {
+    acquire(bulkhead);
+
+    LoadBalancer.Instance instance = loadBalancer.choose();
+    loadBalancer.onStart(instance);
 
     try {
-      ResponseEntity<Map<String, List<CommonDataView>>> responseEntity =
-          restTemplate.exchange(url, GET, null,
-              new ParameterizedTypeReference<Map<String, List<CommonDataView>>>() {
-              });
+      T result = call.apply(instance.getUrl() + path);
+      record(instance, null);
+      return result;
+    } catch (RuntimeException ex) {
+      record(instance, ex);
+      throw ex;
+    } finally {
+      bulkhead.release();
+    }
+  }
 
-      result = responseEntity.getBody();
-    } catch (RestClientException ex) {
-      LOG.warn("Fetch data definition failed.", ex);
+  /**
+   * Call data-definition through the bulkhead and circuit breaker without blocking.
+   * 熔断或并发已满时不发出请求，future直接以ServiceUnavailableException结束。
+   * 取消返回的future会中断请求，释放连接。
+   *
+   * @param bulkhead the bulkhead of the operation
+   * @param instance the instance to call
+   * @param path the path and query after the base url
+   * @param call the call with the full url
+   * @param <T> the result type
+   * @return the future of result
+   */
+  private <T> CompletableFuture<T> callAsync(Bulkhead bulkhead, LoadBalancer.Instance instance,
+      String path, Function<String, ListenableFuture<T>> call) {
+    CompletableFuture<T> result = new CompletableFuture<>();
+
+    try {
+      acquire(bulkhead);
+    } catch (ServiceUnavailableException ex) {
+      LOG.debug("Call to data-definition rejected: {}.", ex.getMessage());
+      result.completeExceptionally(ex);
+      return result;
     }
 
-    LOG.debug("Exit. result size: {}.", result.size());
+    loadBalancer.onStart(instance);
+    result.whenComplete((value, ex) -> {
+      bulkhead.release();
+      record(instance, ex);
+    });
+
+    try {
+      ListenableFuture<T> future = call.apply(instance.getUrl() + path);
+      future.addCallback(result::complete,
+          ex -> result.completeExceptionally(toRestClientException(ex)));
+      result.whenComplete((value, ex) -> {
+        if (result.isCancelled()) {
+          future.cancel(true);
+        }
+      });
+    } catch (RuntimeException ex) {
+      result.completeExceptionally(toRestClientException(ex));
+    }
 
     return result;
   }
+
+  /**
+   * Convert a failure of AsyncRestTemplate to RestClientException.
+   * 与RestTemplate不同，AsyncRestTemplate不转换IO错误，超时、连接失败等会以IOException结束。
+   *
+   * @param ex the failure
+   * @return the RestClientException
+   */
+  private static RestClientException toRestClientException(Throwable ex) {
+    if (ex instanceof RestClientException) {
+      return (RestClientException) ex;
+    }
+
+    if (ex instanceof IOException) {
+      return new ResourceAccessException("I/O error on data-definition: " + ex.getMessage(),
+          (IOException) ex);
+    }
+
+    return new RestClientException("Call to data-definition failed: " + ex.getMessage(), ex);
+  }
+
+  /**
+   * Acquire the bulkhead, then ask the circuit breaker.
+   *
+   * @param bulkhead the bulkhead
+   * @throws ServiceUnavailableException if the circuit is open or the bulkhead is full
+   */
+  private void acquire(Bulkhead bulkhead) {
+    if (!bulkhead.tryAcquire()) {
+      throw new ServiceUnavailableException("Too many concurrent calls to data-definition");
+    }
+
+    if (!circuitBreaker.allowRequest()) {
+      bulkhead.release();
+      throw new ServiceUnavailableException("Circuit of data-definition is open");
+    }
+  }
+
+  /**
+   * Record the call result to the circuit breaker and the load balancer.
+   * 4xx是请求本身的问题，不说明data-definition不可用；被取消的请求不知道结果，不计入。
+   *
+   * @param instance the called instance
+   * @param ex the exception, null if succeeded
+   */
+  private void record(LoadBalancer.Instance instance, Throwable ex) {
+    if (FutureUtils.unwrap(ex) instanceof CancellationException) {
+      circuitBreaker.onCancelled();
+      loadBalancer.onCancelled(instance);
+    } else if (ex == null || FutureUtils.unwrap(ex) instanceof HttpClientErrorException) {
+      circuitBreaker.onSuccess();
+      loadBalancer.onSuccess(instance);
+    } else {
+      circuitBreaker.onFailure();
+      loadBalancer.onFailure(instance);
+    }
+  }
 }
@@ -1,23 +1,30 @@
 package com.umasuo.product.application.service.update;
 
+import com.google.common.collect.Lists;
 import com.umasuo.model.Updater;
 import com.umasuo.product.application.dto.ProductDataView;
 import com.umasuo.product.application.dto.ProductTypeView;
 import com.umasuo.product.application.dto.action.AddDataDefinition;
+import com.umasuo.product.application.service.CacheApplication;
 import com.umasuo.product.application.service.ProductQueryApplication;
 import com.umasuo.product.application.service.ProductTypeApplication;
 import com.umasuo.product.application.service.RestClient;
 import com.umasuo.product.domain.model.Product;
 import com.umasuo.product.infrastructure.update.UpdateAction;
 import com.umasuo.product.infrastructure.update.UpdateActionUtils;
+import com.umasuo.product.infrastructure.util.FutureUtils;
 import com.umasuo.product.infrastructure.validator.DataIdValidator;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskExecutor;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 
 /**
  * 添加产品的数据的service.
@@ -36,6 +43,12 @@ public class AddDataDefinitionService implements Updater<Product, UpdateAction>
   @Autowired
   private transient RestClient restClient;
 
+  /**
+   * CacheApplication.
+   */
+  @Autowired
+  private transient CacheApplication cacheApplication;
+
   /**
    * ProductTypeApplication.
    */
@@ -48,6 +61,13 @@ public class AddDataDefinitionService implements Updater<Product, UpdateAction>
   @Autowired
   private transient ProductQueryApplication productQueryApplication;
 
+  /**
+   * Executor to create data definitions concurrently.
+   */
+  @Autowired
+  @Qualifier("dataDefinitionExecutor")
+  private transient TaskExecutor dataDefinitionExecutor;
+
   /**
    * 执行update的方法。
    *
@@ -56,34 +76,74 @@ public class AddDataDefinitionService implements Updater<Product, UpdateAction>
    */
   @Override
   public void handle(Product product, UpdateAction updateAction) {
-    LOG.debug("Enter.");
-    AddDataDefinition action = (AddDataDefinition) updateAction;
-
-    checkDataId(action.getDataId(), product);
-
-    action.setProductId(product.getId());
-
-    String dataDefinitionId = restClient.createDataDefinition(product.getDeveloperId(), action);
+    handleAll(product, Lists.newArrayList((AddDataDefinition) updateAction),
+        Lists.newArrayList());
+  }
 
-    product.getDataDefineIds().add(dataDefinitionId);
-    LOG.debug("Exit.");
+  /**
+   * 一次添加多个数据定义：先一起检查dataId，再并发调用data-definition创建，新的id按action的顺序加到产品中。
+   * 等所有请求结束后才返回，成功创建的id都会加入createdIds，有请求失败时由调用方删除它们。
+   *
+   * @param product the product
+   * @param actions the AddDataDefinition actions
+   * @param createdIds collects ids created in data-definition, even if other creations failed
+   */
+  public void handleAll(Product product, List<AddDataDefinition> actions,
+      List<String> createdIds) {
+    LOG.debug("Enter. productId: {}, action size: {}.", product.getId(), actions.size());
+
+    checkDataIds(actions.stream().map(AddDataDefinition::getDataId)
+        .collect(Collectors.toList()), product);
+
+    List<CompletableFuture<String>> creations = actions.stream().map(action -> {
+      action.setProductId(product.getId());
+      return CompletableFuture.supplyAsync(
+          () -> restClient.createDataDefinition(product.getDeveloperId(), action),
+          dataDefinitionExecutor);
+    }).collect(Collectors.toList());
+
+    List<String> dataDefinitionIds = Lists.newArrayList();
+    RuntimeException failure = null;
+
+    for (CompletableFuture<String> creation : creations) {
+      try {
+        String dataDefinitionId = FutureUtils.join(creation);
+        dataDefinitionIds.add(dataDefinitionId);
+        createdIds.add(dataDefinitionId);
+      } catch (RuntimeException ex) {
+        if (failure == null) {
+          failure = ex;
+        }
+      }
+    }
+
+    cacheApplication.deleteProductData(product.getDeveloperId(), product.getId());
+
+    if (failure != null) {
+      LOG.debug("Add dataDefinition failed, created: {}.", dataDefinitionIds);
+      throw failure;
+    }
+
+    product.getDataDefineIds().addAll(dataDefinitionIds);
+
+    LOG.debug("Exit. new dataDefinition ids: {}.", dataDefinitionIds);
   }
 
   /**
-   * 判断dataId是否合法：对应的ProductType没有该dataId，已存在的Data没有该id。
+   * 判断dataId是否合法：对应的ProductType没有该dataId，已存在的Data没有该id，要添加的dataId之间也不重复。
    *
-   * @param dataId the dataId
+   * @param dataIds the dataIds
    * @param product the Product
    */
-  private void checkDataId(String dataId, Product product) {
+  private void checkDataIds(List<String> dataIds, Product product) {
     LOG.debug("Enter.");
     ProductTypeView productType = productTypeApplication.get(product.getProductType());
 
     List<ProductDataView> productDataViews =
         productQueryApplication.getDataDefinitions(product.getDeveloperId(), product.getId());
 
-    DataIdValidator.checkForAdd(dataId, productType, productDataViews);
+    DataIdValidator.checkForAdd(dataIds, productType, productDataViews);
 
-    LOG.debug("Exit. dataId not exist.");
+    LOG.debug("Exit. dataIds not exist.");
   }
 }
@@ -4,6 +4,7 @@ import com.umasuo.exception.ParametersException;
 import com.umasuo.model.Updater;
 import com.umasuo.product.application.dto.CopyRequest;
 import com.umasuo.product.application.dto.action.CopyDataDefinition;
+import com.umasuo.product.application.service.CacheApplication;
 import com.umasuo.product.application.service.RestClient;
 import com.umasuo.product.domain.model.Product;
 import com.umasuo.product.infrastructure.update.UpdateAction;
@@ -34,6 +35,12 @@ public class CopyDataDefinitionService implements Updater<Product, UpdateAction>
   @Autowired
   private transient RestClient restClient;
 
+  /**
+   * CacheApplication.
+   */
+  @Autowired
+  private transient CacheApplication cacheApplication;
+
   /**
    * 执行update的方法。
    *
@@ -49,6 +56,8 @@ public class CopyDataDefinitionService implements Updater<Product, UpdateAction>
     List<String> newDataDefinitionIds =
         restClient.copyDataDefinitions(entity.getDeveloperId(), copyRequest);
 
+    cacheApplication.deleteProductData(entity.getDeveloperId(), entity.getId());
+
     if (newDataDefinitionIds.isEmpty()) {
       LOG.debug("Something wrong when copy dataDefinition.");
       throw new ParametersException("Can not copy dataDefinition");
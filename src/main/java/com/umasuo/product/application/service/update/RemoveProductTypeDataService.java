@@ -4,14 +4,12 @@ import com.umasuo.exception.NotExistException;
 import com.umasuo.exception.ParametersException;
 import com.umasuo.model.Updater;
 import com.umasuo.product.application.dto.action.RemoveProductTypeData;
-import com.umasuo.product.application.service.RestClient;
 import com.umasuo.product.domain.model.ProductType;
 import com.umasuo.product.infrastructure.update.UpdateAction;
 import com.umasuo.product.infrastructure.update.UpdateActionUtils;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
 
@@ -28,12 +26,6 @@ public class RemoveProductTypeDataService implements Updater<ProductType, Update
    */
   private static final Logger LOG = LoggerFactory.getLogger(RemoveProductTypeDataService.class);
 
-  /**
-   * RestClient.
-   */
-  @Autowired
-  private transient RestClient restClient;
-
   /**
    * 执行update的方法。
    *
@@ -58,10 +50,9 @@ public class RemoveProductTypeDataService implements Updater<ProductType, Update
       throw new NotExistException("DataDefinition is not exist in the product type");
     }
 
+    // data-definition中的数据定义在保存产品类型时记录到outbox，由后台任务删除
     entity.getDataIds().remove(removeId);
 
-    restClient.deleteProductTypeData(entity.getId(), removeId);
-
     LOG.debug("Exit.");
   }
 
@@ -6,6 +6,7 @@ import com.umasuo.model.Updater;
 import com.umasuo.product.application.dto.ProductDataView;
 import com.umasuo.product.application.dto.ProductTypeView;
 import com.umasuo.product.application.dto.action.UpdateDataDefinition;
+import com.umasuo.product.application.service.CacheApplication;
 import com.umasuo.product.application.service.ProductQueryApplication;
 import com.umasuo.product.application.service.ProductTypeApplication;
 import com.umasuo.product.application.service.RestClient;
@@ -39,6 +40,12 @@ public class UpdateDataService implements Updater<Product, UpdateAction> {
   @Autowired
   private transient RestClient restClient;
 
+  /**
+   * CacheApplication.
+   */
+  @Autowired
+  private transient CacheApplication cacheApplication;
+
   /**
    * ProductTypeApplication.
    */
@@ -83,6 +90,8 @@ public class UpdateDataService implements Updater<Product, UpdateAction> {
 
     restClient.updateDataDefinition(dataDefinitionId, product.getDeveloperId(), request);
 
+    cacheApplication.deleteProductData(product.getDeveloperId(), product.getId());
+
     LOG.debug("Exit.");
   }
 
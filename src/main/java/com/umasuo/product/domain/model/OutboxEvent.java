@@ -0,0 +1,97 @@
+package com.umasuo.product.domain.model;
+
+import com.umasuo.product.infrastructure.enums.OutboxEventType;
+import com.umasuo.product.infrastructure.enums.OutboxStatus;
+
+import lombok.Data;
+
+import org.hibernate.annotations.GenericGenerator;
+import org.springframework.data.annotation.CreatedDate;
+import org.springframework.data.jpa.domain.support.AuditingEntityListener;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EntityListeners;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.Version;
+
+/**
+ * 需要在data-definition中执行的操作，和产品的修改在同一个事务中保存，由后台任务投递.
+ */
+@Entity
+@Table(name = "outbox_event")
+@Data
+@EntityListeners(AuditingEntityListener.class)
+public class OutboxEvent {
+
+  /**
+   * The id.
+   * Created by database when insert.
+   */
+  @Id
+  @GeneratedValue(generator = "uuid")
+  @GenericGenerator(name = "uuid", strategy = "uuid2")
+  @Column(name = "id")
+  private String id;
+
+  /**
+   * The Created at.
+   */
+  @CreatedDate
+  @Column(name = "created_at")
+  protected Long createdAt;
+
+  /**
+   * Version used to claim the event, so that only one node delivers it.
+   */
+  @Version
+  private Integer version;
+
+  /**
+   * 操作类型.
+   */
+  private OutboxEventType type;
+
+  /**
+   * 投递状态.
+   */
+  private OutboxStatus status;
+
+  /**
+   * The developerId, null for product type events.
+   */
+  private String developerId;
+
+  /**
+   * The productId.
+   */
+  private String productId;
+
+  /**
+   * The productTypeId.
+   */
+  private String productTypeId;
+
+  /**
+   * The dataDefinitionId, null when delete all data definitions.
+   */
+  private String dataDefinitionId;
+
+  /**
+   * 已经尝试投递的次数.
+   */
+  private Integer attempts;
+
+  /**
+   * 下次可以投递的时间.
+   */
+  private Long nextAttemptAt;
+
+  /**
+   * 最后一次投递失败的原因.
+   */
+  @Column(length = 1000)
+  private String lastError;
+}
@@ -0,0 +1,233 @@
+package com.umasuo.product.domain.service;
+
+import com.umasuo.product.domain.model.OutboxEvent;
+import com.umasuo.product.infrastructure.enums.OutboxEventType;
+import com.umasuo.product.infrastructure.enums.OutboxStatus;
+import com.umasuo.product.infrastructure.repository.OutboxEventRepository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Service class for OutboxEvent.
+ * 添加事件的方法需要在产品修改的事务中调用，事件和产品的修改一起提交或回滚。
+ */
+@Service
+public class OutboxService {
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOG = LoggerFactory.getLogger(OutboxService.class);
+
+  /**
+   * Max length of the saved error message.
+   */
+  private static final int MAX_ERROR_LENGTH = 1000;
+
+  /**
+   * OutboxEventRepository.
+   */
+  @Autowired
+  private transient OutboxEventRepository repository;
+
+  /**
+   * Add event to delete all data definitions of the product.
+   *
+   * @param developerId the developer id
+   * @param productId the product id
+   */
+  public void addDeleteAllDataDefinition(String developerId, String productId) {
+    LOG.debug("Enter. developerId: {}, productId: {}.", developerId, productId);
+
+    OutboxEvent event = build(OutboxEventType.DELETE_ALL_DATA_DEFINITION);
+    event.setDeveloperId(developerId);
+    event.setProductId(productId);
+
+    repository.save(event);
+
+    LOG.debug("Exit.");
+  }
+
+  /**
+   * Add events to delete data definitions of the product.
+   *
+   * @param developerId the developer id
+   * @param productId the product id
+   * @param dataDefinitionIds the data definition ids
+   */
+  public void addDeleteDataDefinitions(String developerId, String productId,
+      Collection<String> dataDefinitionIds) {
+    LOG.debug("Enter. developerId: {}, productId: {}, dataDefinitionIds: {}.",
+        developerId, productId, dataDefinitionIds);
+
+    List<OutboxEvent> events = dataDefinitionIds.stream().map(dataDefinitionId -> {
+      OutboxEvent event = build(OutboxEventType.DELETE_DATA_DEFINITION);
+      event.setDeveloperId(developerId);
+      event.setProductId(productId);
+      event.setDataDefinitionId(dataDefinitionId);
+      return event;
+    }).collect(Collectors.toList());
+
+    repository.save(events);
+
+    LOG.debug("Exit. event size: {}.", events.size());
+  }
+
+  /**
+   * Add event to delete all data definitions of the product type.
+   *
+   * @param productTypeId the product type id
+   */
+  public void addDeleteAllProductTypeData(String productTypeId) {
+    LOG.debug("Enter. productTypeId: {}.", productTypeId);
+
+    OutboxEvent event = build(OutboxEventType.DELETE_ALL_PRODUCT_TYPE_DATA);
+    event.setProductTypeId(productTypeId);
+
+    repository.save(event);
+
+    LOG.debug("Exit.");
+  }
+
+  /**
+   * Add events to delete data definitions of the product type.
+   *
+   * @param productTypeId the product type id
+   * @param dataDefinitionIds the data definition ids
+   */
+  public void addDeleteProductTypeData(String productTypeId,
+      Collection<String> dataDefinitionIds) {
+    LOG.debug("Enter. productTypeId: {}, dataDefinitionIds: {}.", productTypeId,
+        dataDefinitionIds);
+
+    List<OutboxEvent> events = dataDefinitionIds.stream().map(dataDefinitionId -> {
+      OutboxEvent event = build(OutboxEventType.DELETE_PRODUCT_TYPE_DATA);
+      event.setProductTypeId(productTypeId);
+      event.setDataDefinitionId(dataDefinitionId);
+      return event;
+    }).collect(Collectors.toList());
+
+    repository.save(events);
+
+    LOG.debug("Exit. event size: {}.", events.size());
+  }
+
+  /**
+   * Gets events which can be delivered now, oldest first.
+   *
+   * @param batchSize the batch size
+   * @return list of OutboxEvent
+   */
+  public List<OutboxEvent> getDue(int batchSize) {
+    return repository.findByStatusAndNextAttemptAtLessThanEqualOrderByCreatedAt(
+        OutboxStatus.PENDING, System.currentTimeMillis(), new PageRequest(0, batchSize));
+  }
+
+  /**
+   * Claim the event before delivering it.
+   * 认领后在leaseMillis内其它节点不会再投递它，节点在投递中途退出时，租期过后事件会被重新投递。
+   *
+   * @param event the event
+   * @param leaseMillis the lease millis
+   * @return the claimed event, null if claimed by another node
+   */
+  public OutboxEvent claim(OutboxEvent event, long leaseMillis) {
+    event.setAttempts(event.getAttempts() + 1);
+    event.setNextAttemptAt(System.currentTimeMillis() + leaseMillis);
+
+    try {
+      return repository.save(event);
+    } catch (ObjectOptimisticLockingFailureException ex) {
+      LOG.debug("Event: {} is claimed by another node.", event.getId());
+      return null;
+    }
+  }
+
+  /**
+   * Remove the delivered event.
+   *
+   * @param event the event
+   */
+  public void delivered(OutboxEvent event) {
+    repository.delete(event);
+  }
+
+  /**
+   * Deliver the event again after the delay.
+   *
+   * @param event the event
+   * @param delayMillis the delay millis
+   * @param error the error
+   */
+  public void retry(OutboxEvent event, long delayMillis, String error) {
+    event.setNextAttemptAt(System.currentTimeMillis() + delayMillis);
+    event.setLastError(truncate(error));
+
+    repository.save(event);
+  }
+
+  /**
+   * Stop delivering the event, keep it for admin.
+   *
+   * @param event the event
+   * @param error the error
+   */
+  public void fail(OutboxEvent event, String error) {
+    LOG.warn("Give up outbox event: {}, type: {}, attempts: {}, error: {}.",
+        event.getId(), event.getType(), event.getAttempts(), error);
+
+    event.setStatus(OutboxStatus.FAILED);
+    event.setLastError(truncate(error));
+
+    repository.save(event);
+  }
+
+  /**
+   * Count events by status.
+   *
+   * @param status the status
+   * @return the count
+   */
+  public long count(OutboxStatus status) {
+    return repository.countByStatus(status);
+  }
+
+  /**
+   * Build a pending event which can be delivered now.
+   *
+   * @param type the type
+   * @return the event
+   */
+  private static OutboxEvent build(OutboxEventType type) {
+    OutboxEvent event = new OutboxEvent();
+
+    event.setType(type);
+    event.setStatus(OutboxStatus.PENDING);
+    event.setAttempts(0);
+    event.setNextAttemptAt(System.currentTimeMillis());
+
+    return event;
+  }
+
+  /**
+   * Truncate the error message to fit the column.
+   *
+   * @param error the error
+   * @return the truncated error
+   */
+  private static String truncate(String error) {
+    if (error == null || error.length() <= MAX_ERROR_LENGTH) {
+      return error;
+    }
+    return error.substring(0, MAX_ERROR_LENGTH);
+  }
+}
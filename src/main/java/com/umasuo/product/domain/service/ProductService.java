@@ -61,7 +61,7 @@ public class ProductService {
   }
 
   /**
-   * Gets by developer id.
+   * Gets by developer id, sorted by createdAt desc.
    *
    * @param developerId the developer id
    * @return by developer id
@@ -73,7 +73,7 @@ public class ProductService {
     sample.setDeveloperId(developerId);
 
     Example<Product> example = Example.of(sample);
-    Sort sort = new Sort(Direction.ASC, "createdAt");
+    Sort sort = new Sort(Direction.DESC, "createdAt");
 
     List<Product> products = repository.findAll(example, sort);
 
@@ -71,4 +71,9 @@ public class Router {
    * Admin product count path: /v1/admin/products/count.
    */
   public static final String ADMIN_PRODUCT_COUNT = ADMIN_PRODUCT_ROOT + "/count";
+
+  /**
+   * Admin metrics path: /v1/admin/products/metrics.
+   */
+  public static final String ADMIN_PRODUCT_METRICS = ADMIN_PRODUCT_ROOT + "/metrics";
 }
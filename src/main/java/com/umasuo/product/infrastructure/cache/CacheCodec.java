@@ -0,0 +1,79 @@
+package com.umasuo.product.infrastructure.cache;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+/**
+ * 缓存的value使用的编码格式。
+ * JDK: java序列化，体积大，类变化后无法读取。
+ * JSON: 带类型信息的json，可读，忽略未知字段。
+ * SMILE: 二进制的json，与JSON相同的模型，体积更小，编解码更快。
+ */
+public enum CacheCodec {
+
+  /**
+   * Java serialization.
+   */
+  JDK,
+
+  /**
+   * Json.
+   */
+  JSON,
+
+  /**
+   * Smile, binary json.
+   */
+  SMILE;
+
+  /**
+   * The property used to keep the class name of the cached object.
+   */
+  private static final String CLASS_PROPERTY = "@class";
+
+  /**
+   * Build the serializer of this codec.
+   *
+   * @return the redis serializer
+   */
+  public RedisSerializer<Object> serializer() {
+    RedisSerializer<Object> result;
+
+    switch (this) {
+      case JSON:
+        result = new GenericJackson2JsonRedisSerializer(buildMapper(new ObjectMapper()));
+        break;
+      case SMILE:
+        // 类型信息中的类名会重复出现，共享重复的字符串值可以明显减小体积
+        SmileFactory factory = new SmileFactory()
+            .configure(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES, true);
+        result = new GenericJackson2JsonRedisSerializer(buildMapper(new ObjectMapper(factory)));
+        break;
+      case JDK:
+      default:
+        result = new JdkSerializationRedisSerializer();
+        break;
+    }
+
+    return result;
+  }
+
+  /**
+   * Configure the mapper to keep type information and tolerate class changes.
+   * 类型信息只接受缓存的类，见CacheTypeResolverBuilder。
+   *
+   * @param mapper the mapper
+   * @return the object mapper
+   */
+  private static ObjectMapper buildMapper(ObjectMapper mapper) {
+    mapper.setDefaultTyping(new CacheTypeResolverBuilder(CLASS_PROPERTY));
+    mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    return mapper;
+  }
+}
@@ -0,0 +1,72 @@
+package com.umasuo.product.infrastructure.cache;
+
+/**
+ * 带软过期时间的缓存值：软过期后仍然可以返回，但应该在后台刷新。
+ * 硬过期由Redis的TTL保证，过期后的值不会被读出来。
+ *
+ * @param <T> the value type
+ */
+public final class CacheEntry<T> {
+
+  /**
+   * The cached value.
+   */
+  private final transient T value;
+
+  /**
+   * Time in millis after which the value should be refreshed.
+   */
+  private final transient long softExpireAt;
+
+  /**
+   * Private constructor.
+   *
+   * @param value the value
+   * @param softExpireAt the soft expire time in millis
+   */
+  private CacheEntry(T value, long softExpireAt) {
+    this.value = value;
+    this.softExpireAt = softExpireAt;
+  }
+
+  /**
+   * Build cache entry.
+   *
+   * @param value the value
+   * @param softExpireAt the soft expire time in millis
+   * @param <T> the value type
+   * @return the cache entry
+   */
+  public static <T> CacheEntry<T> of(T value, long softExpireAt) {
+    return new CacheEntry<>(value, softExpireAt);
+  }
+
+  /**
+   * Build cache entry with another value and the same soft expire time.
+   *
+   * @param value the value
+   * @param <R> the value type
+   * @return the cache entry
+   */
+  public <R> CacheEntry<R> withValue(R value) {
+    return new CacheEntry<>(value, softExpireAt);
+  }
+
+  /**
+   * Gets the cached value.
+   *
+   * @return the value
+   */
+  public T getValue() {
+    return value;
+  }
+
+  /**
+   * Is the value past the soft expire time.
+   *
+   * @return true if should be refreshed
+   */
+  public boolean isStale() {
+    return System.currentTimeMillis() > softExpireAt;
+  }
+}
@@ -0,0 +1,105 @@
+package com.umasuo.product.infrastructure.cache;
+
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DatabindContext;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.cfg.MapperConfig;
+import com.fasterxml.jackson.databind.jsontype.NamedType;
+import com.fasterxml.jackson.databind.jsontype.TypeIdResolver;
+import com.fasterxml.jackson.databind.jsontype.impl.ClassNameIdResolver;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+import com.google.common.collect.ImmutableSet;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * 缓存value的类型信息，与NON_FINAL的default typing相同，但只接受缓存会写入的类：
+ * application.dto包中的类和常用的集合类。
+ * 任何能写Redis的程序都可以决定类型信息中的类名，不限制的话读取时会实例化任意的类。
+ */
+public class CacheTypeResolverBuilder extends ObjectMapper.DefaultTypeResolverBuilder {
+
+  /**
+   * The serialVersionUID.
+   */
+  private static final long serialVersionUID = 3459372813658273514L;
+
+  /**
+   * Package of the cached views.
+   */
+  private static final String DTO_PACKAGE = "com.umasuo.product.application.dto.";
+
+  /**
+   * Collection classes used in the cached values.
+   */
+  private static final Set<String> COLLECTION_CLASSES = ImmutableSet.of(
+      "java.util.ArrayList",
+      "java.util.LinkedList",
+      "java.util.HashMap",
+      "java.util.LinkedHashMap",
+      "java.util.TreeMap",
+      "java.util.HashSet",
+      "java.util.LinkedHashSet",
+      "java.util.TreeSet");
+
+  /**
+   * Constructor.
+   *
+   * @param property the property to keep the class name
+   */
+  public CacheTypeResolverBuilder(String property) {
+    super(ObjectMapper.DefaultTyping.NON_FINAL);
+    init(JsonTypeInfo.Id.CLASS, null);
+    inclusion(JsonTypeInfo.As.PROPERTY);
+    typeProperty(property);
+  }
+
+  /**
+   * Is the class allowed in the type information.
+   *
+   * @param className the class name
+   * @return true if allowed
+   */
+  public static boolean isAllowed(String className) {
+    return className.startsWith(DTO_PACKAGE) || COLLECTION_CLASSES.contains(className);
+  }
+
+  @Override
+  protected TypeIdResolver idResolver(MapperConfig<?> config, JavaType baseType,
+      Collection<NamedType> subtypes, boolean forSer, boolean forDeser) {
+    if (_idType != JsonTypeInfo.Id.CLASS) {
+      return super.idResolver(config, baseType, subtypes, forSer, forDeser);
+    }
+    return new AllowedClassNameIdResolver(baseType, config.getTypeFactory());
+  }
+
+  /**
+   * Resolve class names only of the allowed classes.
+   */
+  private static final class AllowedClassNameIdResolver extends ClassNameIdResolver {
+
+    /**
+     * Constructor.
+     *
+     * @param baseType the base type
+     * @param typeFactory the type factory
+     */
+    AllowedClassNameIdResolver(JavaType baseType, TypeFactory typeFactory) {
+      super(baseType, typeFactory);
+    }
+
+    @Override
+    public JavaType typeFromId(DatabindContext context, String id) throws IOException {
+      if (!isAllowed(id)) {
+        throw JsonMappingException.from((JsonParser) null,
+            "Class not allowed in cache: " + id);
+      }
+      return super.typeFromId(context, id);
+    }
+  }
+}
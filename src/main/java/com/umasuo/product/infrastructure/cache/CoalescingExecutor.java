@@ -0,0 +1,126 @@
+package com.umasuo.product.infrastructure.cache;
+
+import com.google.common.collect.Maps;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 异步执行缓存写入，同一个key还没有执行的写入会被合并，只执行最后提交的那一个。
+ * 线程池满时直接丢弃写入，缓存填充丢了只会导致下次请求再加载一次。
+ */
+public class CoalescingExecutor {
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOG = LoggerFactory.getLogger(CoalescingExecutor.class);
+
+  /**
+   * The delegate executor, should have a bounded queue.
+   */
+  private final transient Executor executor;
+
+  /**
+   * Pending tasks, key is the cache key.
+   */
+  private final transient ConcurrentMap<String, Runnable> pending = new ConcurrentHashMap<>();
+
+  /**
+   * Submitted task count.
+   */
+  private final transient AtomicLong submitted = new AtomicLong();
+
+  /**
+   * Task count replaced by a later task of the same key.
+   */
+  private final transient AtomicLong coalesced = new AtomicLong();
+
+  /**
+   * Task count dropped because the executor is full.
+   */
+  private final transient AtomicLong dropped = new AtomicLong();
+
+  /**
+   * Task count failed when executing.
+   */
+  private final transient AtomicLong failed = new AtomicLong();
+
+  /**
+   * Constructor.
+   *
+   * @param executor the delegate executor
+   */
+  public CoalescingExecutor(Executor executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * Submit a task for the key.
+   * 如果该key已经有一个等待执行的任务，只替换它，不再重复排队。
+   *
+   * @param key the key
+   * @param task the task
+   */
+  public void submit(String key, Runnable task) {
+    submitted.incrementAndGet();
+
+    if (pending.put(key, task) != null) {
+      coalesced.incrementAndGet();
+      return;
+    }
+
+    try {
+      executor.execute(() -> run(key));
+    } catch (RejectedExecutionException ex) {
+      // 替换过的任务也在这里一起丢弃，否则后续提交会一直以为已经在排队
+      pending.remove(key);
+      dropped.incrementAndGet();
+      LOG.debug("Executor is full, drop cache write: {}.", key);
+    }
+  }
+
+  /**
+   * Gets the statistics.
+   *
+   * @return the statistics
+   */
+  public Map<String, Object> getStats() {
+    Map<String, Object> result = Maps.newLinkedHashMap();
+
+    result.put("pending", pending.size());
+    result.put("submitted", submitted.get());
+    result.put("coalesced", coalesced.get());
+    result.put("dropped", dropped.get());
+    result.put("failed", failed.get());
+
+    return result;
+  }
+
+  /**
+   * Run the latest pending task of the key.
+   *
+   * @param key the key
+   */
+  private void run(String key) {
+    Runnable task = pending.remove(key);
+
+    if (task == null) {
+      return;
+    }
+
+    try {
+      task.run();
+    } catch (RuntimeException ex) {
+      failed.incrementAndGet();
+      LOG.warn("Cache write: {} failed.", key, ex);
+    }
+  }
+}
@@ -0,0 +1,69 @@
+package com.umasuo.product.infrastructure.cache;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.umasuo.product.application.dto.ProductTypeView;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 内存中的产品类型快照，不可修改，产品类型变化时整体替换。
+ */
+public final class ProductTypeCatalog {
+
+  /**
+   * All product types, sorted by createdAt desc.
+   */
+  private final transient List<ProductTypeView> productTypes;
+
+  /**
+   * Product types indexed by id.
+   */
+  private final transient Map<String, ProductTypeView> index;
+
+  /**
+   * Private constructor.
+   *
+   * @param productTypes the sorted product types
+   */
+  private ProductTypeCatalog(List<ProductTypeView> productTypes) {
+    this.productTypes = ImmutableList.copyOf(productTypes);
+    this.index = ImmutableMap.copyOf(productTypes.stream()
+        .collect(Collectors.toMap(ProductTypeView::getId, Function.identity())));
+  }
+
+  /**
+   * Build catalog from product types.
+   *
+   * @param productTypes the product types
+   * @return the product type catalog
+   */
+  public static ProductTypeCatalog of(Collection<ProductTypeView> productTypes) {
+    return new ProductTypeCatalog(productTypes.stream()
+        .sorted((view1, view2) -> view2.getCreatedAt().compareTo(view1.getCreatedAt()))
+        .collect(Collectors.toList()));
+  }
+
+  /**
+   * Gets all product types, sorted by createdAt desc.
+   *
+   * @return the all
+   */
+  public List<ProductTypeView> getAll() {
+    return productTypes;
+  }
+
+  /**
+   * Gets product type by id.
+   *
+   * @param id the id
+   * @return the product type view, null if not exist
+   */
+  public ProductTypeView get(String id) {
+    return index.get(id);
+  }
+}
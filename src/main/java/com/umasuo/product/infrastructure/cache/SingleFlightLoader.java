@@ -0,0 +1,67 @@
+package com.umasuo.product.infrastructure.cache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * 合并同一个key的并发加载：同一时间只有一个线程真正执行加载，其它线程等待并共享它的结果。
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class SingleFlightLoader<K, V> {
+
+  /**
+   * Loads in flight, key is the load key.
+   */
+  private final transient ConcurrentMap<K, CompletableFuture<V>> inFlight =
+      new ConcurrentHashMap<>();
+
+  /**
+   * Load value by key, join the in-flight load if there is one.
+   * Exception thrown by the loader is rethrown to every waiting caller.
+   *
+   * @param key the key
+   * @param loader the loader
+   * @return the value
+   */
+  public V load(K key, Supplier<V> loader) {
+    CompletableFuture<V> future = new CompletableFuture<>();
+    CompletableFuture<V> existing = inFlight.putIfAbsent(key, future);
+
+    if (existing != null) {
+      return join(existing);
+    }
+
+    try {
+      V value = loader.get();
+      future.complete(value);
+      return value;
+    } catch (RuntimeException | Error ex) {
+      future.completeExceptionally(ex);
+      throw ex;
+    } finally {
+      inFlight.remove(key, future);
+    }
+  }
+
+  /**
+   * Wait for the in-flight load.
+   *
+   * @param future the future
+   * @return the value
+   */
+  private V join(CompletableFuture<V> future) {
+    try {
+      return future.join();
+    } catch (CompletionException ex) {
+      if (ex.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) ex.getCause();
+      }
+      throw ex;
+    }
+  }
+}
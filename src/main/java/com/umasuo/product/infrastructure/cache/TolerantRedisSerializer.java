@@ -0,0 +1,58 @@
+package com.umasuo.product.infrastructure.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+/**
+ * 读取失败时返回null的serializer，旧格式（例如切换codec之前写入）的缓存会被当作没有缓存。
+ */
+public class TolerantRedisSerializer implements RedisSerializer<Object> {
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOG = LoggerFactory.getLogger(TolerantRedisSerializer.class);
+
+  /**
+   * The delegate serializer.
+   */
+  private final transient RedisSerializer<Object> delegate;
+
+  /**
+   * Instantiates a new Tolerant redis serializer.
+   *
+   * @param delegate the delegate
+   */
+  public TolerantRedisSerializer(RedisSerializer<Object> delegate) {
+    this.delegate = delegate;
+  }
+
+  /**
+   * Serialize.
+   *
+   * @param value the value
+   * @return the bytes
+   */
+  @Override
+  public byte[] serialize(Object value) {
+    return delegate.serialize(value);
+  }
+
+  /**
+   * Deserialize, return null if the bytes can not be read by the delegate.
+   *
+   * @param bytes the bytes
+   * @return the object
+   */
+  @Override
+  public Object deserialize(byte[] bytes) {
+    try {
+      return delegate.deserialize(bytes);
+    } catch (SerializationException ex) {
+      LOG.debug("Can not deserialize cache value, treat as not cached.", ex);
+      return null;
+    }
+  }
+}
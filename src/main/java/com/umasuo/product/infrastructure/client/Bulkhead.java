@@ -0,0 +1,73 @@
+package com.umasuo.product.infrastructure.client;
+
+import com.google.common.collect.Maps;
+
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 限制一类远程调用的并发数，超过时直接拒绝而不是排队，避免一个慢的依赖占满所有线程。
+ */
+public class Bulkhead {
+
+  /**
+   * Max concurrent calls.
+   */
+  private final transient int maxConcurrentCalls;
+
+  /**
+   * Permits.
+   */
+  private final transient Semaphore permits;
+
+  /**
+   * Rejected call count.
+   */
+  private final transient AtomicLong rejected = new AtomicLong();
+
+  /**
+   * Constructor.
+   *
+   * @param maxConcurrentCalls the max concurrent calls
+   */
+  public Bulkhead(int maxConcurrentCalls) {
+    this.maxConcurrentCalls = maxConcurrentCalls;
+    this.permits = new Semaphore(maxConcurrentCalls);
+  }
+
+  /**
+   * Try to start a call without waiting, must be followed by release if acquired.
+   *
+   * @return true if acquired
+   */
+  public boolean tryAcquire() {
+    if (permits.tryAcquire()) {
+      return true;
+    }
+    rejected.incrementAndGet();
+    return false;
+  }
+
+  /**
+   * Finish a call.
+   */
+  public void release() {
+    permits.release();
+  }
+
+  /**
+   * Gets the statistics.
+   *
+   * @return the statistics
+   */
+  public Map<String, Object> getStats() {
+    Map<String, Object> result = Maps.newLinkedHashMap();
+
+    result.put("max", maxConcurrentCalls);
+    result.put("active", maxConcurrentCalls - permits.availablePermits());
+    result.put("rejected", rejected.get());
+
+    return result;
+  }
+}
@@ -0,0 +1,122 @@
+package com.umasuo.product.infrastructure.client;
+
+import com.google.common.hash.Hashing;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * 本地保存的一次GET结果和它的校验值，用于发送条件请求。
+ * 服务端返回304，或者返回的内容和上次完全相同时，直接使用保存的值，不需要再解析JSON。
+ *
+ * @param <T> the value type
+ */
+public final class CachedResponse<T> {
+
+  /**
+   * ETag of the response, null if not returned.
+   */
+  private final String etag;
+
+  /**
+   * Last-Modified of the response, -1 if not returned.
+   */
+  private final long lastModified;
+
+  /**
+   * Hash of the response body.
+   */
+  private final String contentHash;
+
+  /**
+   * The parsed value.
+   */
+  private final T value;
+
+  /**
+   * Constructor.
+   *
+   * @param etag the etag
+   * @param lastModified the last modified
+   * @param contentHash the content hash
+   * @param value the value
+   */
+  private CachedResponse(String etag, long lastModified, String contentHash, T value) {
+    this.etag = etag;
+    this.lastModified = lastModified;
+    this.contentHash = contentHash;
+    this.value = value;
+  }
+
+  /**
+   * Build from the response and it's parsed value.
+   *
+   * @param response the response, body is the raw content
+   * @param value the parsed value
+   * @param <T> the value type
+   * @return the cached response
+   */
+  public static <T> CachedResponse<T> of(ResponseEntity<byte[]> response, T value) {
+    HttpHeaders headers = response.getHeaders();
+    return new CachedResponse<>(headers.getETag(), headers.getLastModified(),
+        hash(response.getBody()), value);
+  }
+
+  /**
+   * Keep the value but take the validators of the new response.
+   *
+   * @param response the response with the same content
+   * @return the cached response
+   */
+  public CachedResponse<T> revalidated(ResponseEntity<byte[]> response) {
+    HttpHeaders headers = response.getHeaders();
+    return new CachedResponse<>(headers.getETag(), headers.getLastModified(), contentHash, value);
+  }
+
+  /**
+   * Build request headers with If-None-Match and If-Modified-Since.
+   *
+   * @return the headers
+   */
+  public HttpHeaders conditionalHeaders() {
+    HttpHeaders headers = new HttpHeaders();
+
+    if (etag != null) {
+      headers.setIfNoneMatch(etag);
+    }
+    if (lastModified >= 0) {
+      headers.setIfModifiedSince(lastModified);
+    }
+
+    return headers;
+  }
+
+  /**
+   * Is the response body the same as the cached one.
+   *
+   * @param response the response
+   * @return true if same
+   */
+  public boolean isSameContent(ResponseEntity<byte[]> response) {
+    return contentHash.equals(hash(response.getBody()));
+  }
+
+  /**
+   * Gets value.
+   *
+   * @return the value
+   */
+  public T getValue() {
+    return value;
+  }
+
+  /**
+   * Hash the body.
+   *
+   * @param body the body
+   * @return the hash
+   */
+  private static String hash(byte[] body) {
+    return Hashing.sha256().hashBytes(body == null ? new byte[0] : body).toString();
+  }
+}
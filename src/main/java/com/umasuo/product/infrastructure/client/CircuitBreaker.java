@@ -0,0 +1,169 @@
+package com.umasuo.product.infrastructure.client;
+
+import com.google.common.collect.Maps;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+
+/**
+ * 简单的熔断器：连续失败达到阈值后打开，打开期间直接拒绝调用；
+ * 打开时间过后放行一个试探请求，成功则关闭，失败则重新打开。
+ */
+public class CircuitBreaker {
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOG = LoggerFactory.getLogger(CircuitBreaker.class);
+
+  /**
+   * Circuit state.
+   */
+  public enum State {
+    /**
+     * Calls are allowed.
+     */
+    CLOSED,
+
+    /**
+     * Calls are rejected.
+     */
+    OPEN,
+
+    /**
+     * One trial call is allowed.
+     */
+    HALF_OPEN
+  }
+
+  /**
+   * Name used in logs.
+   */
+  private final transient String name;
+
+  /**
+   * Consecutive failures to open the circuit.
+   */
+  private final transient int failureThreshold;
+
+  /**
+   * How long the circuit stays open.
+   */
+  private final transient long openMillis;
+
+  /**
+   * Current state.
+   */
+  private transient State state = State.CLOSED;
+
+  /**
+   * Consecutive failure count.
+   */
+  private transient int failures;
+
+  /**
+   * Time the circuit was opened.
+   */
+  private transient long openedAt;
+
+  /**
+   * Is the trial call of half open state in flight.
+   */
+  private transient boolean trialInFlight;
+
+  /**
+   * Rejected call count.
+   */
+  private transient long rejected;
+
+  /**
+   * Constructor.
+   *
+   * @param name the name
+   * @param failureThreshold the failure threshold
+   * @param openMillis the open millis
+   */
+  public CircuitBreaker(String name, int failureThreshold, long openMillis) {
+    this.name = name;
+    this.failureThreshold = failureThreshold;
+    this.openMillis = openMillis;
+  }
+
+  /**
+   * Is a call allowed now, every allowed call must be followed by onSuccess, onFailure or
+   * onCancelled.
+   *
+   * @return true if allowed
+   */
+  public synchronized boolean allowRequest() {
+    if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openMillis) {
+      state = State.HALF_OPEN;
+      trialInFlight = false;
+    }
+
+    if (state == State.CLOSED) {
+      return true;
+    }
+
+    if (state == State.HALF_OPEN && !trialInFlight) {
+      trialInFlight = true;
+      return true;
+    }
+
+    rejected++;
+    return false;
+  }
+
+  /**
+   * Record a successful call.
+   */
+  public synchronized void onSuccess() {
+    if (state != State.CLOSED) {
+      LOG.info("Circuit: {} closed.", name);
+    }
+    state = State.CLOSED;
+    failures = 0;
+    trialInFlight = false;
+  }
+
+  /**
+   * Record a failed call.
+   */
+  public synchronized void onFailure() {
+    failures++;
+    trialInFlight = false;
+
+    if (state == State.HALF_OPEN || failures >= failureThreshold) {
+      if (state != State.OPEN) {
+        LOG.warn("Circuit: {} opened after {} failures.", name, failures);
+      }
+      state = State.OPEN;
+      openedAt = System.currentTimeMillis();
+    }
+  }
+
+  /**
+   * Record a call cancelled before it's result is known, e.g. the slower one of hedged calls.
+   * 不改变状态，只释放试探请求的名额。
+   */
+  public synchronized void onCancelled() {
+    trialInFlight = false;
+  }
+
+  /**
+   * Gets the statistics.
+   *
+   * @return the statistics
+   */
+  public synchronized Map<String, Object> getStats() {
+    Map<String, Object> result = Maps.newLinkedHashMap();
+
+    result.put("state", state);
+    result.put("failures", failures);
+    result.put("rejected", rejected);
+
+    return result;
+  }
+}
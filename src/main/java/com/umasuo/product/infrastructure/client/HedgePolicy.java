@@ -0,0 +1,319 @@
+package com.umasuo.product.infrastructure.client;
+
+import com.google.common.collect.Maps;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 对冲请求：请求在最近延迟的指定百分位内还没有返回时，再发一个相同的请求，先成功的结果被使用，另一个被取消。
+ * 只能用于幂等的读请求。每个请求积累budget-ratio个令牌，发出一个对冲请求消耗一个，
+ * 所以额外的请求最多是正常请求的budget-ratio倍，服务变慢或者不可用时不会成倍放大压力。
+ */
+public class HedgePolicy {
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOG = LoggerFactory.getLogger(HedgePolicy.class);
+
+  /**
+   * Is hedging enabled.
+   */
+  private final transient boolean enabled;
+
+  /**
+   * Percentile of recent latencies to wait before hedging.
+   */
+  private final transient double percentile;
+
+  /**
+   * Min delay before hedging.
+   */
+  private final transient long minDelayMillis;
+
+  /**
+   * Tokens earned by each call.
+   */
+  private final transient double budgetRatio;
+
+  /**
+   * Max tokens, the max burst of hedges.
+   */
+  private final transient double maxTokens;
+
+  /**
+   * Latencies of the first calls.
+   */
+  private final transient LatencyWindow latencies;
+
+  /**
+   * Clock to measure latencies.
+   */
+  private final transient Clock clock;
+
+  /**
+   * Available tokens.
+   */
+  private transient double tokens;
+
+  /**
+   * Hedged calls sent.
+   */
+  private final transient AtomicLong hedged = new AtomicLong();
+
+  /**
+   * Hedged calls faster than the first call.
+   */
+  private final transient AtomicLong won = new AtomicLong();
+
+  /**
+   * Hedges skipped because the budget is used up.
+   */
+  private final transient AtomicLong budgetExhausted = new AtomicLong();
+
+  /**
+   * Constructor.
+   *
+   * @param enabled is hedging enabled
+   * @param percentile the percentile of latency to wait, 0 to 100
+   * @param minDelayMillis the min delay
+   * @param budgetRatio hedges allowed for each call
+   * @param maxTokens the max burst of hedges
+   * @param windowSize the number of recent latencies
+   */
+  public HedgePolicy(boolean enabled, double percentile, long minDelayMillis, double budgetRatio,
+      double maxTokens, int windowSize) {
+    this(enabled, percentile, minDelayMillis, budgetRatio, maxTokens, windowSize,
+        Clock.systemUTC());
+  }
+
+  /**
+   * Constructor with the clock, used by tests.
+   *
+   * @param enabled is hedging enabled
+   * @param percentile the percentile of latency to wait, 0 to 100
+   * @param minDelayMillis the min delay
+   * @param budgetRatio hedges allowed for each call
+   * @param maxTokens the max burst of hedges
+   * @param windowSize the number of recent latencies
+   * @param clock the clock to measure latencies
+   */
+  HedgePolicy(boolean enabled, double percentile, long minDelayMillis, double budgetRatio,
+      double maxTokens, int windowSize, Clock clock) {
+    this.enabled = enabled;
+    this.percentile = percentile;
+    this.minDelayMillis = minDelayMillis;
+    this.budgetRatio = budgetRatio;
+    this.maxTokens = maxTokens;
+    this.latencies = new LatencyWindow(windowSize);
+    this.clock = clock;
+  }
+
+  /**
+   * Send the call, and send the hedge if the call is slow.
+   * 还没有足够的延迟样本时不对冲。
+   *
+   * @param scheduler the scheduler to send the hedge
+   * @param call sends the first call
+   * @param hedge sends the hedge, e.g. to another instance
+   * @param <T> the result type
+   * @return the future of the first successful result, cancel it cancels both calls
+   */
+  public <T> CompletableFuture<T> call(ScheduledExecutorService scheduler,
+      Supplier<CompletableFuture<T>> call, Supplier<CompletableFuture<T>> hedge) {
+    if (!enabled) {
+      return call.get();
+    }
+
+    long start = clock.millis();
+    CompletableFuture<T> first = call.get();
+    first.whenComplete((value, ex) -> {
+      // 被取消的请求只知道延迟至少是这么长，也记录下来，避免只留下快的样本
+      if (ex == null || first.isCancelled()) {
+        latencies.record(clock.millis() - start);
+      }
+    });
+
+    deposit();
+
+    long delay = latencies.percentile(percentile);
+    if (delay < 0 || first.isDone()) {
+      return first;
+    }
+
+    HedgedCall<T> hedgedCall = new HedgedCall<>(first);
+
+    scheduler.schedule(() -> {
+      if (hedgedCall.isDone()) {
+        return;
+      }
+      if (!withdraw()) {
+        budgetExhausted.incrementAndGet();
+        return;
+      }
+
+      LOG.debug("Call not done in {} millis, send hedge.", delay);
+      hedged.incrementAndGet();
+      hedgedCall.addHedge(hedge.get());
+    }, Math.max(delay, minDelayMillis), TimeUnit.MILLISECONDS);
+
+    return hedgedCall.getResult();
+  }
+
+  /**
+   * Gets the statistics.
+   *
+   * @return the statistics
+   */
+  public Map<String, Object> getStats() {
+    Map<String, Object> result = Maps.newLinkedHashMap();
+
+    result.put("enabled", enabled);
+    result.put("delayMillis", Math.max(latencies.percentile(percentile), minDelayMillis));
+    result.put("hedged", hedged.get());
+    result.put("won", won.get());
+    result.put("budgetExhausted", budgetExhausted.get());
+
+    return result;
+  }
+
+  /**
+   * Earn tokens for a call.
+   */
+  private synchronized void deposit() {
+    tokens = Math.min(maxTokens, tokens + budgetRatio);
+  }
+
+  /**
+   * Take a token for a hedge.
+   *
+   * @return false if no token
+   */
+  private synchronized boolean withdraw() {
+    if (tokens < 1) {
+      return false;
+    }
+    tokens -= 1;
+    return true;
+  }
+
+  /**
+   * The first call and it's hedge, the first success wins and the other is cancelled.
+   * 两个都失败时以后失败的异常结束。
+   *
+   * @param <T> the result type
+   */
+  private final class HedgedCall<T> {
+
+    /**
+     * The result.
+     */
+    private final transient CompletableFuture<T> result = new CompletableFuture<>();
+
+    /**
+     * The first call.
+     */
+    private final transient CompletableFuture<T> first;
+
+    /**
+     * The hedge, null if not sent.
+     */
+    private transient CompletableFuture<T> hedge;
+
+    /**
+     * Calls not finished.
+     */
+    private transient int pending = 1;
+
+    /**
+     * Constructor.
+     *
+     * @param first the first call
+     */
+    HedgedCall(CompletableFuture<T> first) {
+      this.first = first;
+      first.whenComplete((value, ex) -> complete(false, value, ex));
+      result.whenComplete((value, ex) -> cancelAll());
+    }
+
+    /**
+     * Gets the result.
+     *
+     * @return the result
+     */
+    CompletableFuture<T> getResult() {
+      return result;
+    }
+
+    /**
+     * Is the result done.
+     *
+     * @return true if done
+     */
+    synchronized boolean isDone() {
+      return result.isDone();
+    }
+
+    /**
+     * Add the hedge.
+     *
+     * @param future the hedge
+     */
+    void addHedge(CompletableFuture<T> future) {
+      synchronized (this) {
+        if (result.isDone()) {
+          future.cancel(true);
+          return;
+        }
+        hedge = future;
+        pending++;
+      }
+      future.whenComplete((value, ex) -> complete(true, value, ex));
+    }
+
+    /**
+     * One of the calls finished.
+     *
+     * @param isHedge is it the hedge
+     * @param value the value
+     * @param ex the exception, null if succeeded
+     */
+    private void complete(boolean isHedge, T value, Throwable ex) {
+      synchronized (this) {
+        if (result.isDone() || (ex != null && --pending > 0)) {
+          return;
+        }
+      }
+
+      if (ex != null) {
+        result.completeExceptionally(ex);
+      } else if (result.complete(value) && isHedge) {
+        won.incrementAndGet();
+      }
+    }
+
+    /**
+     * Cancel the calls not finished.
+     */
+    private void cancelAll() {
+      CompletableFuture<T> sentHedge;
+      synchronized (this) {
+        sentHedge = hedge;
+      }
+
+      first.cancel(true);
+      if (sentHedge != null) {
+        sentHedge.cancel(true);
+      }
+    }
+  }
+}
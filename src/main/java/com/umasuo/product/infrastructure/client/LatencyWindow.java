@@ -0,0 +1,82 @@
+package com.umasuo.product.infrastructure.client;
+
+import java.util.Arrays;
+
+/**
+ * Latencies of the most recent calls, used to get a percentile.
+ * 排序有开销，所以不是每次记录后都重新计算，而是每记录十分之一窗口大小后计算一次。
+ */
+public class LatencyWindow {
+
+  /**
+   * Recent latencies, used as a ring.
+   */
+  private final transient long[] samples;
+
+  /**
+   * Records between two sorts.
+   */
+  private final transient int refreshInterval;
+
+  /**
+   * Next position to write.
+   */
+  private transient int next;
+
+  /**
+   * Number of valid samples.
+   */
+  private transient int count;
+
+  /**
+   * Records since the last sort.
+   */
+  private transient int sinceSort;
+
+  /**
+   * Sorted copy of samples of the last sort.
+   */
+  private transient long[] sorted = new long[0];
+
+  /**
+   * Constructor.
+   *
+   * @param size the window size
+   */
+  public LatencyWindow(int size) {
+    this.samples = new long[size];
+    this.refreshInterval = Math.max(1, size / 10);
+  }
+
+  /**
+   * Record a latency.
+   *
+   * @param millis the latency in millis
+   */
+  public synchronized void record(long millis) {
+    samples[next] = millis;
+    next = (next + 1) % samples.length;
+    count = Math.min(count + 1, samples.length);
+
+    if (++sinceSort >= refreshInterval) {
+      sorted = Arrays.copyOf(samples, count);
+      Arrays.sort(sorted);
+      sinceSort = 0;
+    }
+  }
+
+  /**
+   * Gets the percentile of the last sort.
+   *
+   * @param percentile the percentile, 0 to 100
+   * @return the latency in millis, -1 if not enough samples
+   */
+  public synchronized long percentile(double percentile) {
+    if (sorted.length < refreshInterval) {
+      return -1;
+    }
+
+    int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+    return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+  }
+}
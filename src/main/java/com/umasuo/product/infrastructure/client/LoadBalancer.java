@@ -0,0 +1,272 @@
+package com.umasuo.product.infrastructure.client;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * 客户端负载均衡：随机取两个实例，选择正在处理的请求较少的一个（power of two choices）。
+ * 连续失败达到阈值的实例被摘除一段时间，被摘除的实例不超过max-ejection-percent；
+ * 所有实例都被摘除时，仍然在全部实例中选择。
+ */
+public class LoadBalancer {
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOG = LoggerFactory.getLogger(LoadBalancer.class);
+
+  /**
+   * All instances.
+   */
+  private final transient List<Instance> instances;
+
+  /**
+   * Consecutive failures to eject an instance.
+   */
+  private final transient int failureThreshold;
+
+  /**
+   * How long an instance is ejected.
+   */
+  private final transient long ejectMillis;
+
+  /**
+   * Max ejected instances.
+   */
+  private final transient int maxEjected;
+
+  /**
+   * Clock of ejections.
+   */
+  private final transient Clock clock;
+
+  /**
+   * Constructor.
+   *
+   * @param urls the base urls of instances
+   * @param failureThreshold the consecutive failures to eject an instance
+   * @param ejectMillis how long an instance is ejected
+   * @param maxEjectionPercent max percent of ejected instances
+   */
+  public LoadBalancer(List<String> urls, int failureThreshold, long ejectMillis,
+      int maxEjectionPercent) {
+    this(urls, failureThreshold, ejectMillis, maxEjectionPercent, Clock.systemUTC());
+  }
+
+  /**
+   * Constructor with the clock, used by tests.
+   *
+   * @param urls the base urls of instances
+   * @param failureThreshold the consecutive failures to eject an instance
+   * @param ejectMillis how long an instance is ejected
+   * @param maxEjectionPercent max percent of ejected instances
+   * @param clock the clock of ejections
+   */
+  LoadBalancer(List<String> urls, int failureThreshold, long ejectMillis,
+      int maxEjectionPercent, Clock clock) {
+    if (urls.isEmpty()) {
+      throw new IllegalArgumentException("No instance to balance");
+    }
+
+    this.instances = urls.stream().map(Instance::new).collect(Collectors.toList());
+    this.failureThreshold = failureThreshold;
+    this.ejectMillis = ejectMillis;
+    this.maxEjected = urls.size() * maxEjectionPercent / 100;
+    this.clock = clock;
+  }
+
+  /**
+   * Choose an instance.
+   *
+   * @return the instance
+   */
+  public Instance choose() {
+    return choose(null);
+  }
+
+  /**
+   * Choose an instance other than the excluded one if possible, e.g. for a hedge.
+   *
+   * @param excluded the excluded instance, may be null
+   * @return the instance
+   */
+  public Instance choose(Instance excluded) {
+    if (instances.size() == 1) {
+      return instances.get(0);
+    }
+
+    long now = clock.millis();
+    List<Instance> candidates = instances.stream()
+        .filter(instance -> instance != excluded && !instance.isEjected(now))
+        .collect(Collectors.toList());
+
+    if (candidates.isEmpty()) {
+      candidates = instances.stream()
+          .filter(instance -> instance != excluded)
+          .collect(Collectors.toList());
+    }
+
+    if (candidates.size() == 1) {
+      return candidates.get(0);
+    }
+
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int first = random.nextInt(candidates.size());
+    int second = random.nextInt(candidates.size() - 1);
+    if (second >= first) {
+      second++;
+    }
+
+    Instance a = candidates.get(first);
+    Instance b = candidates.get(second);
+    return a.outstanding.get() <= b.outstanding.get() ? a : b;
+  }
+
+  /**
+   * A call to the instance started, must be followed by onSuccess, onFailure or onCancelled.
+   *
+   * @param instance the instance
+   */
+  public void onStart(Instance instance) {
+    instance.outstanding.incrementAndGet();
+  }
+
+  /**
+   * A call to the instance succeeded.
+   *
+   * @param instance the instance
+   */
+  public void onSuccess(Instance instance) {
+    instance.outstanding.decrementAndGet();
+    instance.failures.set(0);
+  }
+
+  /**
+   * A call to the instance was cancelled before it's result is known.
+   *
+   * @param instance the instance
+   */
+  public void onCancelled(Instance instance) {
+    instance.outstanding.decrementAndGet();
+  }
+
+  /**
+   * A call to the instance failed, eject it after too many consecutive failures.
+   *
+   * @param instance the instance
+   */
+  public void onFailure(Instance instance) {
+    instance.outstanding.decrementAndGet();
+
+    if (instance.failures.incrementAndGet() < failureThreshold) {
+      return;
+    }
+
+    synchronized (this) {
+      long now = clock.millis();
+      long ejected = instances.stream().filter(item -> item.isEjected(now)).count();
+
+      if (instance.isEjected(now) || ejected >= maxEjected) {
+        return;
+      }
+
+      LOG.warn("Eject instance: {} for {} millis after {} failures.", instance.url,
+          ejectMillis, instance.failures.get());
+      instance.ejectedUntil = now + ejectMillis;
+      instance.failures.set(0);
+      instance.ejections.incrementAndGet();
+    }
+  }
+
+  /**
+   * Gets the statistics of each instance.
+   *
+   * @return the statistics
+   */
+  public List<Map<String, Object>> getStats() {
+    long now = clock.millis();
+    List<Map<String, Object>> result = Lists.newArrayList();
+
+    for (Instance instance : instances) {
+      Map<String, Object> stats = Maps.newLinkedHashMap();
+      stats.put("url", instance.url);
+      stats.put("outstanding", instance.outstanding.get());
+      stats.put("failures", instance.failures.get());
+      stats.put("ejected", instance.isEjected(now));
+      stats.put("ejections", instance.ejections.get());
+      result.add(stats);
+    }
+
+    return result;
+  }
+
+  /**
+   * An instance and it's load.
+   */
+  public static final class Instance {
+
+    /**
+     * Base url.
+     */
+    private final transient String url;
+
+    /**
+     * Calls in flight.
+     */
+    private final transient AtomicInteger outstanding = new AtomicInteger();
+
+    /**
+     * Consecutive failures.
+     */
+    private final transient AtomicInteger failures = new AtomicInteger();
+
+    /**
+     * Times ejected.
+     */
+    private final transient AtomicLong ejections = new AtomicLong();
+
+    /**
+     * Ejected until this time.
+     */
+    private volatile transient long ejectedUntil;
+
+    /**
+     * Constructor.
+     *
+     * @param url the base url
+     */
+    private Instance(String url) {
+      this.url = url;
+    }
+
+    /**
+     * Gets the base url.
+     *
+     * @return the url
+     */
+    public String getUrl() {
+      return url;
+    }
+
+    /**
+     * Is the instance ejected.
+     *
+     * @param now current time
+     * @return true if ejected
+     */
+    private boolean isEjected(long now) {
+      return ejectedUntil > now;
+    }
+  }
+}
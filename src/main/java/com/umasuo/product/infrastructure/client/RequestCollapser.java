@@ -0,0 +1,198 @@
+package com.umasuo.product.infrastructure.client;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+/**
+ * 把一小段时间内同一组的单个查询合并成一次批量查询，再把结果分发给每个调用方。
+ * 窗口时间到了或者批次达到最大数量时发出批量查询。
+ *
+ * @param <G> the group type, requests of different groups are never batched together
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class RequestCollapser<G, K, V> {
+
+  /**
+   * Scheduler to flush batches when the window ends.
+   */
+  private final transient ScheduledExecutorService scheduler;
+
+  /**
+   * Window to collect requests.
+   */
+  private final transient long windowMillis;
+
+  /**
+   * Max keys in one batch.
+   */
+  private final transient int maxBatchSize;
+
+  /**
+   * Batch loader, keys not in the result get null.
+   */
+  private final transient BiFunction<G, List<K>, CompletableFuture<Map<K, V>>> batchLoader;
+
+  /**
+   * Open batches, key is the group.
+   */
+  private final transient ConcurrentMap<G, Batch> batches = new ConcurrentHashMap<>();
+
+  /**
+   * Constructor.
+   *
+   * @param scheduler the scheduler
+   * @param windowMillis the window in millis
+   * @param maxBatchSize the max batch size
+   * @param batchLoader the batch loader
+   */
+  public RequestCollapser(ScheduledExecutorService scheduler, long windowMillis, int maxBatchSize,
+      BiFunction<G, List<K>, CompletableFuture<Map<K, V>>> batchLoader) {
+    this.scheduler = scheduler;
+    this.windowMillis = windowMillis;
+    this.maxBatchSize = maxBatchSize;
+    this.batchLoader = batchLoader;
+  }
+
+  /**
+   * Submit one request, it is sent together with other requests of the same group.
+   *
+   * @param group the group
+   * @param key the key
+   * @return the future of the value
+   */
+  public CompletableFuture<V> submit(G group, K key) {
+    while (true) {
+      Batch batch = batches.computeIfAbsent(group, this::open);
+      CompletableFuture<V> result = batch.add(key);
+
+      if (result != null) {
+        if (batch.size() >= maxBatchSize) {
+          flush(batch);
+        }
+        return result;
+      }
+
+      // 批次刚好已经发出，移除后重新打开一个
+      batches.remove(group, batch);
+    }
+  }
+
+  /**
+   * Open a new batch and schedule it's flush.
+   *
+   * @param group the group
+   * @return the batch
+   */
+  private Batch open(G group) {
+    Batch batch = new Batch(group);
+
+    scheduler.schedule(() -> flush(batch), windowMillis, TimeUnit.MILLISECONDS);
+
+    return batch;
+  }
+
+  /**
+   * Send the batch, only the first call of each batch takes effect.
+   *
+   * @param batch the batch
+   */
+  private void flush(Batch batch) {
+    Map<K, List<CompletableFuture<V>>> waiters = batch.close();
+
+    if (waiters == null) {
+      return;
+    }
+
+    batches.remove(batch.group, batch);
+
+    CompletableFuture<Map<K, V>> loaded;
+    try {
+      loaded = batchLoader.apply(batch.group, Lists.newArrayList(waiters.keySet()));
+    } catch (RuntimeException ex) {
+      loaded = new CompletableFuture<>();
+      loaded.completeExceptionally(ex);
+    }
+
+    loaded.whenComplete((result, ex) -> waiters.entrySet().stream().forEach(entry -> {
+      entry.getValue().stream().forEach(future -> {
+        if (ex != null) {
+          future.completeExceptionally(ex);
+        } else {
+          future.complete(result == null ? null : result.get(entry.getKey()));
+        }
+      });
+    }));
+  }
+
+  /**
+   * Requests of one group waiting to be sent.
+   */
+  private final class Batch {
+
+    /**
+     * The group.
+     */
+    private final transient G group;
+
+    /**
+     * Waiting callers, key is the request key.
+     */
+    private transient Map<K, List<CompletableFuture<V>>> waiters = Maps.newLinkedHashMap();
+
+    /**
+     * Constructor.
+     *
+     * @param group the group
+     */
+    private Batch(G group) {
+      this.group = group;
+    }
+
+    /**
+     * Add a request.
+     *
+     * @param key the key
+     * @return the future of the value, null if the batch is already sent
+     */
+    private synchronized CompletableFuture<V> add(K key) {
+      if (waiters == null) {
+        return null;
+      }
+
+      CompletableFuture<V> result = new CompletableFuture<>();
+      waiters.computeIfAbsent(key, k -> Lists.newArrayList()).add(result);
+
+      return result;
+    }
+
+    /**
+     * Count of distinct keys.
+     *
+     * @return the size
+     */
+    private synchronized int size() {
+      return waiters == null ? 0 : waiters.size();
+    }
+
+    /**
+     * Close the batch.
+     *
+     * @return the waiters, null if already closed
+     */
+    private synchronized Map<K, List<CompletableFuture<V>>> close() {
+      Map<K, List<CompletableFuture<V>>> result = waiters;
+      waiters = null;
+      return result;
+    }
+  }
+}
@@ -0,0 +1,24 @@
+package com.umasuo.product.infrastructure.client;
+
+import org.springframework.web.client.RestClientException;
+
+/**
+ * 熔断器打开或者并发数已满时，远程调用没有发出。
+ * 继承RestClientException，已有的远程调用错误处理同样适用。
+ */
+public class ServiceUnavailableException extends RestClientException {
+
+  /**
+   * Serial version uid.
+   */
+  private static final long serialVersionUID = 2912358327384619561L;
+
+  /**
+   * Constructor.
+   *
+   * @param message the message
+   */
+  public ServiceUnavailableException(String message) {
+    super(message);
+  }
+}
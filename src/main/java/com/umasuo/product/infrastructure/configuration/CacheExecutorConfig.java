@@ -0,0 +1,74 @@
+package com.umasuo.product.infrastructure.configuration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Executors for cache maintenance, so that refreshing and writing cache do not run on request
+ * threads.
+ */
+@Configuration
+public class CacheExecutorConfig {
+
+  /**
+   * Refresh thread count.
+   */
+  @Value("${cache.refresh.pool-size:2}")
+  private transient int refreshPoolSize;
+
+  /**
+   * Max pending refresh tasks.
+   */
+  @Value("${cache.refresh.queue-capacity:100}")
+  private transient int refreshQueueCapacity;
+
+  /**
+   * Cache write thread count.
+   */
+  @Value("${cache.write.pool-size:2}")
+  private transient int writePoolSize;
+
+  /**
+   * Max pending cache writes, same key writes are coalesced before queueing.
+   */
+  @Value("${cache.write.queue-capacity:1000}")
+  private transient int writeQueueCapacity;
+
+  /**
+   * Cache refresh executor.
+   * 队列满时直接拒绝（TaskRejectedException），由调用方放弃这次刷新，继续返回旧值。
+   *
+   * @return the thread pool task executor
+   */
+  @Bean
+  public ThreadPoolTaskExecutor cacheRefreshExecutor() {
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+
+    executor.setCorePoolSize(refreshPoolSize);
+    executor.setMaxPoolSize(refreshPoolSize);
+    executor.setQueueCapacity(refreshQueueCapacity);
+    executor.setThreadNamePrefix("cache-refresh-");
+
+    return executor;
+  }
+
+  /**
+   * Cache write executor.
+   * 队列满时拒绝，缓存填充会被丢弃，不会阻塞请求线程。
+   *
+   * @return the thread pool task executor
+   */
+  @Bean
+  public ThreadPoolTaskExecutor cacheWriteExecutor() {
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+
+    executor.setCorePoolSize(writePoolSize);
+    executor.setMaxPoolSize(writePoolSize);
+    executor.setQueueCapacity(writeQueueCapacity);
+    executor.setThreadNamePrefix("cache-write-");
+
+    return executor;
+  }
+}
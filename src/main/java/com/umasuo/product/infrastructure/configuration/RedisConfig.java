@@ -0,0 +1,72 @@
+package com.umasuo.product.infrastructure.configuration;
+
+import com.umasuo.product.application.service.CacheApplication;
+import com.umasuo.product.infrastructure.cache.CacheCodec;
+import com.umasuo.product.infrastructure.cache.TolerantRedisSerializer;
+import com.umasuo.product.infrastructure.util.RedisUtils;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+/**
+ * Redis configuration.
+ */
+@Configuration
+public class RedisConfig {
+
+  /**
+   * The codec used for cached values.
+   */
+  @Value("${cache.codec:SMILE}")
+  private transient CacheCodec cacheCodec;
+
+  /**
+   * Redis template used by the caches.
+   * key使用字符串，value使用配置的codec，无法读取的value当作没有缓存。
+   *
+   * @param connectionFactory the connection factory
+   * @return the redis template
+   */
+  @Bean
+  public RedisTemplate<Object, Object> redisTemplate(RedisConnectionFactory connectionFactory) {
+    RedisTemplate<Object, Object> template = new RedisTemplate<>();
+
+    RedisSerializer<Object> valueSerializer = new TolerantRedisSerializer(cacheCodec.serializer());
+
+    template.setConnectionFactory(connectionFactory);
+    template.setKeySerializer(new StringRedisSerializer());
+    template.setHashKeySerializer(new StringRedisSerializer());
+    template.setValueSerializer(valueSerializer);
+    template.setHashValueSerializer(valueSerializer);
+
+    return template;
+  }
+
+  /**
+   * Listener container for cache invalidation messages.
+   *
+   * @param connectionFactory the connection factory
+   * @param cacheApplication the cache application
+   * @return the redis message listener container
+   */
+  @Bean
+  public RedisMessageListenerContainer invalidationListenerContainer(
+      RedisConnectionFactory connectionFactory, CacheApplication cacheApplication) {
+    RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+
+    container.setConnectionFactory(connectionFactory);
+    container.addMessageListener(cacheApplication,
+        new ChannelTopic(RedisUtils.INVALIDATION_CHANNEL));
+    container.addMessageListener(cacheApplication,
+        new ChannelTopic(RedisUtils.PRODUCT_TYPE_INVALIDATION_CHANNEL));
+
+    return container;
+  }
+}
@@ -0,0 +1,218 @@
+package com.umasuo.product.infrastructure.configuration;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsAsyncClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.client.AsyncRestTemplate;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Http client configuration for RestClient.
+ * 使用连接池和keep-alive，所有超时都可以配置，避免一个很慢的data-definition节点占满所有请求线程。
+ */
+@Configuration
+public class RestClientConfig {
+
+  /**
+   * Max connections in the pool.
+   */
+  @Value("${datadefinition.client.max-total:200}")
+  private transient int maxTotal;
+
+  /**
+   * Max connections for each host.
+   */
+  @Value("${datadefinition.client.max-per-route:50}")
+  private transient int maxPerRoute;
+
+  /**
+   * Connect timeout.
+   */
+  @Value("${datadefinition.client.connect-timeout-millis:1000}")
+  private transient int connectTimeout;
+
+  /**
+   * Read (socket) timeout.
+   */
+  @Value("${datadefinition.client.read-timeout-millis:3000}")
+  private transient int readTimeout;
+
+  /**
+   * Timeout to get a connection from the pool.
+   */
+  @Value("${datadefinition.client.pool-timeout-millis:500}")
+  private transient int poolTimeout;
+
+  /**
+   * Idle connections are closed after this seconds.
+   */
+  @Value("${datadefinition.client.idle-evict-seconds:30}")
+  private transient long idleEvictSeconds;
+
+  /**
+   * Threads to send independent calls of one request concurrently.
+   */
+  @Value("${datadefinition.client.fanout.pool-size:8}")
+  private transient int fanoutPoolSize;
+
+  /**
+   * Max pending concurrent calls.
+   */
+  @Value("${datadefinition.client.fanout.queue-capacity:100}")
+  private transient int fanoutQueueCapacity;
+
+  /**
+   * Pooled connection manager, also used to read pool metrics.
+   *
+   * @return the pooling http client connection manager
+   */
+  @Bean
+  public PoolingHttpClientConnectionManager httpConnectionManager() {
+    PoolingHttpClientConnectionManager connectionManager =
+        new PoolingHttpClientConnectionManager();
+
+    connectionManager.setMaxTotal(maxTotal);
+    connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+
+    return connectionManager;
+  }
+
+  /**
+   * Http client with timeouts and idle connection eviction.
+   *
+   * @param connectionManager the connection manager
+   * @return the closeable http client
+   */
+  @Bean
+  public CloseableHttpClient httpClient(PoolingHttpClientConnectionManager connectionManager) {
+    return HttpClients.custom()
+        .setConnectionManager(connectionManager)
+        .setDefaultRequestConfig(requestConfig())
+        .evictExpiredConnections()
+        .evictIdleConnections(idleEvictSeconds, TimeUnit.SECONDS)
+        .build();
+  }
+
+  /**
+   * Rest template used by RestClient.
+   *
+   * @param httpClient the http client
+   * @return the rest template
+   */
+  @Bean
+  public RestTemplate restTemplate(CloseableHttpClient httpClient) {
+    return new RestTemplate(new HttpComponentsClientHttpRequestFactory(httpClient));
+  }
+
+  /**
+   * Pooled connection manager of the non-blocking http client, also used to read pool metrics.
+   *
+   * @return the pooling nhttp client connection manager
+   */
+  @Bean
+  public PoolingNHttpClientConnectionManager httpAsyncConnectionManager() {
+    DefaultConnectingIOReactor ioReactor;
+    try {
+      ioReactor = new DefaultConnectingIOReactor(IOReactorConfig.DEFAULT);
+    } catch (IOReactorException ex) {
+      throw new IllegalStateException("Create io reactor failed", ex);
+    }
+
+    PoolingNHttpClientConnectionManager connectionManager =
+        new PoolingNHttpClientConnectionManager(ioReactor);
+
+    connectionManager.setMaxTotal(maxTotal);
+    connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+
+    return connectionManager;
+  }
+
+  /**
+   * Non-blocking http client, used by the async methods of RestClient.
+   * 使用NIO，等待响应时不占用调用线程，连接数和超时与同步的client相同。
+   *
+   * @param connectionManager the connection manager
+   * @return the closeable http async client
+   */
+  @Bean
+  public CloseableHttpAsyncClient httpAsyncClient(
+      PoolingNHttpClientConnectionManager connectionManager) {
+    return HttpAsyncClients.custom()
+        .setConnectionManager(connectionManager)
+        .setDefaultRequestConfig(requestConfig())
+        .build();
+  }
+
+  /**
+   * Close expired and idle connections of the non-blocking http client.
+   * 异步client没有内置的清理线程，与同步client一样每idle-evict-seconds清理一次。
+   */
+  @Scheduled(fixedDelayString = "#{${datadefinition.client.idle-evict-seconds:30} * 1000}")
+  public void evictAsyncConnections() {
+    PoolingNHttpClientConnectionManager connectionManager = httpAsyncConnectionManager();
+
+    connectionManager.closeExpiredConnections();
+    connectionManager.closeIdleConnections(idleEvictSeconds, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Async rest template used by RestClient.
+   *
+   * @param httpAsyncClient the http async client
+   * @return the async rest template
+   */
+  @Bean
+  public AsyncRestTemplate asyncRestTemplate(CloseableHttpAsyncClient httpAsyncClient) {
+    return new AsyncRestTemplate(new HttpComponentsAsyncClientHttpRequestFactory(httpAsyncClient));
+  }
+
+  /**
+   * Executor for independent data-definition calls of one request, e.g. adding many data
+   * definitions in one update.
+   * 队列满时由调用线程自己执行，只会变慢，不会失败。
+   *
+   * @return the thread pool task executor
+   */
+  @Bean
+  public ThreadPoolTaskExecutor dataDefinitionExecutor() {
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+
+    executor.setCorePoolSize(fanoutPoolSize);
+    executor.setMaxPoolSize(fanoutPoolSize);
+    executor.setQueueCapacity(fanoutQueueCapacity);
+    executor.setThreadNamePrefix("data-definition-");
+    executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+
+    return executor;
+  }
+
+  /**
+   * Timeouts for every request.
+   *
+   * @return the request config
+   */
+  private RequestConfig requestConfig() {
+    return RequestConfig.custom()
+        .setConnectTimeout(connectTimeout)
+        .setSocketTimeout(readTimeout)
+        .setConnectionRequestTimeout(poolTimeout)
+        .build();
+  }
+}
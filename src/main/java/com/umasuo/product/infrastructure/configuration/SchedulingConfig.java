@@ -0,0 +1,12 @@
+package com.umasuo.product.infrastructure.configuration;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Enable scheduled tasks, used to deliver outbox events.
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
@@ -0,0 +1,26 @@
+package com.umasuo.product.infrastructure.enums;
+
+/**
+ * 需要在data-definition中执行的操作.
+ */
+public enum OutboxEventType {
+  /**
+   * 删除产品的所有数据定义，产品被删除时产生。
+   */
+  DELETE_ALL_DATA_DEFINITION,
+
+  /**
+   * 删除产品的一个数据定义。
+   */
+  DELETE_DATA_DEFINITION,
+
+  /**
+   * 删除产品类型的所有数据定义，产品类型被删除时产生。
+   */
+  DELETE_ALL_PRODUCT_TYPE_DATA,
+
+  /**
+   * 删除产品类型的一个数据定义。
+   */
+  DELETE_PRODUCT_TYPE_DATA
+}
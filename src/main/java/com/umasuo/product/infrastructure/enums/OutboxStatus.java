@@ -0,0 +1,16 @@
+package com.umasuo.product.infrastructure.enums;
+
+/**
+ * Outbox事件的状态，投递成功的事件直接删除.
+ */
+public enum OutboxStatus {
+  /**
+   * 等待投递或者重试。
+   */
+  PENDING,
+
+  /**
+   * 重试次数用完或者不能重试，保留下来等待人工处理。
+   */
+  FAILED
+}
@@ -3,10 +3,12 @@ package com.umasuo.product.infrastructure.exception;
 import com.umasuo.exception.AlreadyExistException;
 import com.umasuo.exception.NotExistException;
 import com.umasuo.exception.handler.ExceptionHandler;
+import com.umasuo.product.infrastructure.client.ServiceUnavailableException;
 import com.umasuo.util.JsonUtils;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
 import org.springframework.web.servlet.HandlerExceptionResolver;
 import org.springframework.web.servlet.ModelAndView;
@@ -29,6 +31,7 @@ public class ProductExceptionHandler implements ExceptionHandler, HandlerExcepti
 
   /**
    * Resolve exception.
+   * 熔断或并发已满时data-definition的调用没有发出，返回503，调用方可以稍后重试。
    *
    * @param request the HttpServletRequest
    * @param response the HttpServletResponse
@@ -40,6 +43,9 @@ public class ProductExceptionHandler implements ExceptionHandler, HandlerExcepti
   public ModelAndView resolveException(HttpServletRequest request, HttpServletResponse response,
       Object handler, Exception ex) {
     setResponse(request, response, handler, ex);
+    if (ex instanceof ServiceUnavailableException) {
+      response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+    }
     addExceptionBody(response, ex);
     return new ModelAndView();
   }
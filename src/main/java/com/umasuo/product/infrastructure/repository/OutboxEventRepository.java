@@ -0,0 +1,34 @@
+package com.umasuo.product.infrastructure.repository;
+
+import com.umasuo.product.domain.model.OutboxEvent;
+import com.umasuo.product.infrastructure.enums.OutboxStatus;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.List;
+
+/**
+ * Repository for OutboxEvent.
+ */
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, String> {
+
+  /**
+   * Find events which can be delivered now, oldest first.
+   *
+   * @param status the status
+   * @param now the current time
+   * @param pageable the batch size
+   * @return list of OutboxEvent
+   */
+  List<OutboxEvent> findByStatusAndNextAttemptAtLessThanEqualOrderByCreatedAt(OutboxStatus status,
+      Long now, Pageable pageable);
+
+  /**
+   * Count events by status.
+   *
+   * @param status the status
+   * @return the count
+   */
+  long countByStatus(OutboxStatus status);
+}
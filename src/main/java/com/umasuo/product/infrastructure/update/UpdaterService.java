@@ -1,21 +1,41 @@
 package com.umasuo.product.infrastructure.update;
 
+import com.fasterxml.jackson.annotation.JsonSubTypes;
+import com.google.common.collect.ImmutableMap;
 import com.umasuo.model.Updater;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.SmartInitializingSingleton;
 import org.springframework.context.ApplicationContext;
 import org.springframework.stereotype.Service;
 
+import java.util.Map;
+
 /**
  * Updater service.
+ * 启动时按UpdateAction的JsonSubTypes建立action名字到Updater的映射，缺少Updater时启动失败；
+ * 之后每个action只需要查一次不可变的map，不再访问ApplicationContext。
  */
 @Service
-public class UpdaterService implements Updater<Object, UpdateAction> {
+public class UpdaterService implements Updater<Object, UpdateAction>, SmartInitializingSingleton {
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOG = LoggerFactory.getLogger(UpdaterService.class);
 
   /**
    * ApplicationContext for get update services.
    */
   private transient ApplicationContext context;
 
+  /**
+   * Updater of each action name, built after all singletons are created.
+   */
+  private transient Map<String, Updater> updaters = ImmutableMap.of();
+
   /**
    * Constructor.
    *
@@ -25,6 +45,38 @@ public class UpdaterService implements Updater<Object, UpdateAction> {
     this.context = context;
   }
 
+  /**
+   * Build the updater map, every UpdateAction subtype must have an Updater bean named as it's
+   * action name.
+   *
+   * @throws IllegalStateException if an action has no updater
+   */
+  @Override
+  public void afterSingletonsInstantiated() {
+    JsonSubTypes subTypes = UpdateAction.class.getAnnotation(JsonSubTypes.class);
+
+    ImmutableMap.Builder<String, Updater> builder = ImmutableMap.builder();
+
+    for (JsonSubTypes.Type type : subTypes.value()) {
+      UpdateAction action = (UpdateAction) BeanUtils.instantiateClass(type.value());
+
+      if (!type.name().equals(action.getActionName())) {
+        throw new IllegalStateException("Action name of " + type.value().getSimpleName()
+            + " is " + action.getActionName() + ", but registered as " + type.name());
+      }
+
+      if (!context.containsBean(type.name())) {
+        throw new IllegalStateException("No updater for action: " + type.name());
+      }
+
+      builder.put(type.name(), context.getBean(type.name(), Updater.class));
+    }
+
+    updaters = builder.build();
+
+    LOG.info("Updaters of {} actions registered.", updaters.size());
+  }
+
   /**
    * Get mapper.
    *
@@ -32,7 +84,13 @@ public class UpdaterService implements Updater<Object, UpdateAction> {
    * @return ZoneUpdateMapper
    */
   private Updater getUpdateService(UpdateAction action) {
-    return (Updater) context.getBean(action.getActionName());
+    Updater updater = updaters.get(action.getActionName());
+
+    if (updater == null) {
+      throw new IllegalStateException("No updater for action: " + action.getActionName());
+    }
+
+    return updater;
   }
 
   /**
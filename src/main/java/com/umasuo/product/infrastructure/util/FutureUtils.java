@@ -0,0 +1,51 @@
+package com.umasuo.product.infrastructure.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * CompletableFuture的工具方法。
+ */
+public final class FutureUtils {
+
+  /**
+   * Private constructor.
+   */
+  private FutureUtils() {
+  }
+
+  /**
+   * Wait for the future, rethrow the original RuntimeException instead of CompletionException.
+   *
+   * @param future the future
+   * @param <T> the result type
+   * @return the result
+   */
+  public static <T> T join(CompletableFuture<T> future) {
+    try {
+      return future.join();
+    } catch (CompletionException ex) {
+      Throwable cause = unwrap(ex);
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw ex;
+    }
+  }
+
+  /**
+   * Get the original exception wrapped by CompletionException or ExecutionException.
+   *
+   * @param ex the exception
+   * @return the original exception
+   */
+  public static Throwable unwrap(Throwable ex) {
+    Throwable result = ex;
+    while ((result instanceof CompletionException || result instanceof ExecutionException)
+        && result.getCause() != null) {
+      result = result.getCause();
+    }
+    return result;
+  }
+}
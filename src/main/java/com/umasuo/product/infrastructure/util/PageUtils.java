@@ -0,0 +1,53 @@
+package com.umasuo.product.infrastructure.util;
+
+import java.util.List;
+
+/**
+ * 用于对列表分页。
+ */
+public final class PageUtils {
+
+  /**
+   * Private constructor.
+   */
+  private PageUtils() {
+  }
+
+  /**
+   * Get one page from the list.
+   *
+   * @param list the list
+   * @param page the page number, start from 0
+   * @param size the page size
+   * @param <T> the element type
+   * @return the page, empty if the page is out of range
+   */
+  public static <T> List<T> page(List<T> list, int page, int size) {
+    int from = (int) Math.min((long) page * size, list.size());
+    int to = (int) Math.min((long) from + size, list.size());
+
+    return list.subList(from, to);
+  }
+
+  /**
+   * Get the index of the first element of the page.
+   *
+   * @param page the page number, start from 0
+   * @param size the page size
+   * @return the start index
+   */
+  public static long start(int page, int size) {
+    return (long) page * size;
+  }
+
+  /**
+   * Get the index of the last element of the page, inclusive.
+   *
+   * @param page the page number, start from 0
+   * @param size the page size
+   * @return the end index
+   */
+  public static long end(int page, int size) {
+    return start(page, size) + size - 1;
+  }
+}
@@ -14,4 +14,57 @@ public class RedisUtils {
    * 缓存Product使用的key。
    */
   public static final String PRODUCT_KEY_FORMAT = "product:%s";
+
+  /**
+   * 开发者Product的顺序索引使用的key，sorted set，score为createdAt。
+   */
+  public static final String PRODUCT_ORDER_KEY_FORMAT = "product:%s:order";
+
+  /**
+   * 标记开发者的所有Product已经完整缓存使用的key，不存在时product hash中可能只有部分产品。
+   * value是加载时间，用于判断是否软过期。
+   */
+  public static final String PRODUCT_LOADED_KEY_FORMAT = "product:%s:loaded";
+
+  /**
+   * 开发者没有任何Product时使用的短期标记。
+   */
+  public static final String PRODUCT_EMPTY_KEY_FORMAT = "product:%s:empty";
+
+  /**
+   * Product不存在（或不属于该开发者）时使用的短期标记，参数为developerId和productId。
+   */
+  public static final String PRODUCT_MISSING_KEY_FORMAT = "product:%s:missing:%s";
+
+  /**
+   * 单个Product的数据定义使用的key，参数为developerId和productId。
+   * 与Product分开缓存，只有数据定义的修改才会删除它。
+   */
+  public static final String PRODUCT_DATA_KEY_FORMAT = "product:%s:data:%s";
+
+  /**
+   * 开发者Product缓存的版本号，每次修改或删除产品时加一。
+   * 填充缓存前先读取版本号，写入时版本号已经变化说明读到的数据可能已经过期，放弃写入。
+   */
+  public static final String PRODUCT_GENERATION_KEY_FORMAT = "product:%s:generation";
+
+  /**
+   * ProductType缓存的版本号，每次修改产品类型时加一，用法与开发者Product缓存的版本号相同。
+   */
+  public static final String PRODUCT_TYPE_GENERATION_KEY = "product:producttype:generation";
+
+  /**
+   * 旧版本java序列化的key已经清理的标记。
+   */
+  public static final String LEGACY_CLEANED_KEY = "product:legacy-keys-cleaned";
+
+  /**
+   * 通知所有节点删除本地缓存使用的channel。
+   */
+  public static final String INVALIDATION_CHANNEL = "product:invalidation";
+
+  /**
+   * 通知所有节点删除本地ProductType快照使用的channel。
+   */
+  public static final String PRODUCT_TYPE_INVALIDATION_CHANNEL = "product:invalidation:producttype";
 }
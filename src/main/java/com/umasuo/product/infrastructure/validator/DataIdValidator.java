@@ -9,6 +9,8 @@ import org.slf4j.LoggerFactory;
 import org.springframework.util.CollectionUtils;
 
 import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * 用于判断DataId是否合法.
@@ -46,6 +48,28 @@ public final class DataIdValidator {
     LOG.debug("Exit.");
   }
 
+  /**
+   * 一次添加多个数据定义时使用，除了逐个检查之外，要添加的dataId之间也不能重复。
+   *
+   * @param dataIds the dataIds
+   * @param productType the ProductType
+   * @param productDataViews list of ProductData
+   */
+  public static void checkForAdd(List<String> dataIds, ProductTypeView productType,
+      List<ProductDataView> productDataViews) {
+    LOG.debug("Enter. dataIds: {}.", dataIds);
+
+    Set<String> distinctIds = dataIds.stream().collect(Collectors.toSet());
+
+    if (distinctIds.size() != dataIds.size()) {
+      LOG.debug("Can not add duplicate dataIds: {}.", dataIds);
+      throw new AlreadyExistException("DataId already exist");
+    }
+
+    dataIds.stream().forEach(dataId -> checkForAdd(dataId, productType, productDataViews));
+
+    LOG.debug("Exit.");
+  }
 
   /**
    * 在产品更新数据定义的时候使用，判断要添加的dataId是否合法：对应的ProductType没有该dataId，已存在的其他data没有该id。
@@ -0,0 +1,99 @@
+package com.umasuo.product.application.rest.stub
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.umasuo.product.domain.service.ProductTypeService
+import groovy.json.JsonSlurper
+import org.springframework.http.MediaType
+import org.springframework.test.web.servlet.MockMvc
+import org.springframework.test.web.servlet.MvcResult
+import org.springframework.test.web.servlet.RequestBuilder
+import org.springframework.test.web.servlet.setup.MockMvcBuilders
+import spock.lang.Specification
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post
+
+/**
+ * Test for the data-definition stub.
+ */
+class DataDefinitionStubControllerSpec extends Specification {
+
+  DataDefinitionStubStore store = new DataDefinitionStubStore()
+
+  DataDefinitionStubController controller = new DataDefinitionStubController()
+
+  MockMvc mockMvc
+
+  def setup() {
+    store.productDataSize = 2
+    store.platformDataSize = 2
+    store.productTypeService = Mock(ProductTypeService)
+
+    controller.store = store
+    controller.objectMapper = new ObjectMapper()
+    controller.errorStatus = 503
+    controller.threads = 1
+  }
+
+  def cleanup() {
+    controller.destroy()
+  }
+
+  def "generate data definitions for a product seen the first time"() {
+    given:
+    start()
+
+    when:
+    MvcResult result = call(get(DataDefinitionStubController.ROOT)
+        .header("developerId", "developer1").param("productIds", "product1"))
+
+    then:
+    result.response.status == 200
+    def body = new JsonSlurper().parseText(result.response.contentAsString)
+    body.product1*.dataId == ["d0", "d1"]
+  }
+
+  def "created data definition is returned with the product's data definitions"() {
+    given:
+    start()
+
+    when:
+    MvcResult created = call(post(DataDefinitionStubController.ROOT)
+        .header("developerId", "developer1")
+        .contentType(MediaType.APPLICATION_JSON)
+        .content('{"action":"addDataDefinition","productId":"product1","dataId":"temperature",'
+        + '"name":"Temperature","schema":"{}"}'))
+    MvcResult read = call(get(DataDefinitionStubController.ROOT)
+        .header("developerId", "developer1").param("productIds", "product1"))
+
+    then:
+    created.response.status == 200
+    def id = new JsonSlurper().parseText(created.response.contentAsString).id
+    new JsonSlurper().parseText(read.response.contentAsString).product1*.id.contains(id)
+  }
+
+  def "fail with the error status at the error rate"() {
+    given:
+    controller.readErrorRate = 1
+    start()
+
+    when:
+    MvcResult result = call(get(DataDefinitionStubController.ROOT)
+        .header("developerId", "developer1").param("productIds", "product1"))
+
+    then:
+    result.response.status == 503
+  }
+
+  private void start() {
+    controller.init()
+    mockMvc = MockMvcBuilders.standaloneSetup(controller).build()
+  }
+
+  private MvcResult call(RequestBuilder request) {
+    MvcResult started = mockMvc.perform(request).andReturn()
+    started.getAsyncResult(5000)
+    return mockMvc.perform(asyncDispatch(started)).andReturn()
+  }
+}
@@ -0,0 +1,172 @@
+package com.umasuo.product.application.service
+
+import com.umasuo.product.application.dto.ProductView
+import org.springframework.core.task.SyncTaskExecutor
+import org.springframework.data.redis.connection.RedisConnection
+import org.springframework.data.redis.core.HashOperations
+import org.springframework.data.redis.core.RedisCallback
+import org.springframework.data.redis.core.RedisOperations
+import org.springframework.data.redis.core.RedisTemplate
+import org.springframework.data.redis.core.SessionCallback
+import org.springframework.data.redis.core.StringRedisTemplate
+import org.springframework.data.redis.core.ValueOperations
+import org.springframework.data.redis.core.ZSetOperations
+import spock.lang.Specification
+
+import java.nio.charset.StandardCharsets
+
+/**
+ * Test that a cache fill racing a change of the same developer is discarded.
+ * Redis is faked by mocks: the generation is a counter, writes in MULTI are queued, and EXEC
+ * discards them if the generation changed after WATCH, like Redis does.
+ */
+class CacheApplicationSpec extends Specification {
+
+  static final String DEVELOPER_ID = "developer1"
+
+  CacheApplication cacheApplication = new CacheApplication()
+
+  RedisTemplate redisTemplate = Mock(RedisTemplate)
+
+  StringRedisTemplate stringRedisTemplate = Mock(StringRedisTemplate)
+
+  RedisOperations operations = Mock(RedisOperations)
+
+  RedisConnection connection = Mock(RedisConnection)
+
+  /**
+   * The generation of the developer in the fake redis.
+   */
+  long generation = 0
+
+  /**
+   * Generation seen by the last WATCH.
+   */
+  Long watched
+
+  /**
+   * Products in the fake redis hash, key is productId.
+   */
+  Map<String, ProductView> stored = [:]
+
+  /**
+   * Writes queued in the current MULTI.
+   */
+  List<Closure> queued = []
+
+  /**
+   * Runs when MULTI is called, used to change the generation between WATCH and EXEC.
+   */
+  Closure onMulti = {}
+
+  def setup() {
+    cacheApplication.redisTemplate = redisTemplate
+    cacheApplication.stringRedisTemplate = stringRedisTemplate
+    cacheApplication.cacheWriteExecutor = new SyncTaskExecutor()
+    cacheApplication.localMaximumSize = 100
+    cacheApplication.localExpireSeconds = 60
+    cacheApplication.hardExpireSeconds = 3600
+    cacheApplication.lastKnownMaximumSize = 100
+    cacheApplication.init()
+
+    ValueOperations<String, String> stringValues = Mock(ValueOperations)
+    stringRedisTemplate.opsForValue() >> stringValues
+    stringValues.get(_) >> { String.valueOf(generation) }
+
+    HashOperations readHash = Mock(HashOperations)
+    redisTemplate.opsForHash() >> readHash
+    readHash.get(_, _) >> { key, productId -> stored[productId] }
+
+    redisTemplate.execute(_ as SessionCallback) >> { SessionCallback callback ->
+      callback.execute(operations)
+    }
+
+    operations.watch(_) >> { watched = generation }
+    operations.unwatch() >> { watched = null }
+    operations.execute(_ as RedisCallback) >> { RedisCallback callback ->
+      callback.doInRedis(connection)
+    }
+    connection.get(_) >> { String.valueOf(generation).getBytes(StandardCharsets.UTF_8) }
+    operations.multi() >> { onMulti() }
+    operations.exec() >> { exec() }
+
+    HashOperations hash = Mock(HashOperations)
+    operations.opsForHash() >> hash
+    hash.put(_, _, _) >> { key, productId, product -> queued << { stored[productId] = product } }
+
+    operations.opsForZSet() >> Mock(ZSetOperations)
+
+    ValueOperations values = Mock(ValueOperations)
+    operations.opsForValue() >> values
+    values.increment(_, 1L) >> {
+      queued << { generation++ }
+      return null
+    }
+  }
+
+  def "fill is written if the generation has not changed"() {
+    given:
+    long loadedAt = cacheApplication.getGeneration(DEVELOPER_ID)
+
+    when:
+    cacheApplication.fillProduct(DEVELOPER_ID, product("loaded"), loadedAt)
+
+    then:
+    stored.product1.name == "loaded"
+    cacheApplication.getProductById(DEVELOPER_ID, "product1").name == "loaded"
+  }
+
+  def "fill loaded before cacheProduct is discarded"() {
+    given: "a fill read the generation and then loaded the old product from database"
+    long loadedAt = cacheApplication.getGeneration(DEVELOPER_ID)
+
+    when: "the product is changed before the fill is written"
+    cacheApplication.cacheProduct(DEVELOPER_ID, product("changed"))
+    cacheApplication.fillProduct(DEVELOPER_ID, product("stale"), loadedAt)
+
+    then:
+    generation == 1
+    stored.product1.name == "changed"
+    cacheApplication.getProductById(DEVELOPER_ID, "product1").name == "changed"
+  }
+
+  def "fill racing deleteProduct between WATCH and EXEC is discarded"() {
+    given:
+    long loadedAt = cacheApplication.getGeneration(DEVELOPER_ID)
+    onMulti = {
+      // deleteProduct of another node commits after the fill checked the generation
+      onMulti = {}
+      generation++
+    }
+
+    when:
+    cacheApplication.fillProduct(DEVELOPER_ID, product("stale"), loadedAt)
+
+    then:
+    generation == 1
+    stored.isEmpty()
+    cacheApplication.getProductById(DEVELOPER_ID, "product1") == null
+  }
+
+  private List<Object> exec() {
+    List<Closure> writes = new ArrayList<>(queued)
+    queued.clear()
+
+    if (watched != null && watched != generation) {
+      watched = null
+      return null
+    }
+
+    watched = null
+    writes.each { it() }
+    return writes.collect { "OK" }
+  }
+
+  private static ProductView product(String name) {
+    ProductView product = new ProductView()
+    product.id = "product1"
+    product.developerId = DEVELOPER_ID
+    product.name = name
+    return product
+  }
+}
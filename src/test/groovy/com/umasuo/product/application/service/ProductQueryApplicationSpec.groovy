@@ -0,0 +1,139 @@
+package com.umasuo.product.application.service
+
+import com.umasuo.exception.NotExistException
+import com.umasuo.product.application.dto.ProductDataView
+import com.umasuo.product.application.dto.ProductView
+import com.umasuo.product.domain.model.Product
+import com.umasuo.product.domain.service.ProductService
+import com.umasuo.product.infrastructure.cache.CacheEntry
+import com.umasuo.product.infrastructure.client.Bulkhead
+import com.umasuo.product.infrastructure.client.CircuitBreaker
+import com.umasuo.product.infrastructure.client.HedgePolicy
+import com.umasuo.product.infrastructure.client.LoadBalancer
+import org.springframework.core.ParameterizedTypeReference
+import org.springframework.util.concurrent.SettableListenableFuture
+import org.springframework.web.client.AsyncRestTemplate
+import spock.lang.Specification
+
+import java.util.concurrent.CompletableFuture
+
+/**
+ * Test how ProductQueryApplication reads data definitions: only for existing products, without
+ * the removed ones, and the last known ones when data-definition times out.
+ */
+class ProductQueryApplicationSpec extends Specification {
+
+  static final String DEVELOPER_ID = "developer1"
+
+  ProductQueryApplication productQueryApplication = new ProductQueryApplication()
+
+  CacheApplication cacheApplication = Mock(CacheApplication)
+
+  ProductService productService = Mock(ProductService)
+
+  AsyncRestTemplate asyncRestTemplate = Mock(AsyncRestTemplate)
+
+  def setup() {
+    RestClient restClient = new RestClient()
+    restClient.asyncRestTemplate = asyncRestTemplate
+    restClient.loadBalancer = new LoadBalancer(['http://a'], 3, 30000, 100)
+    restClient.circuitBreaker = new CircuitBreaker("data-definition", 100, 30000)
+    restClient.productDataBulkhead = new Bulkhead(10)
+    restClient.productDataHedge = new HedgePolicy(false, 95, 10, 0.1, 10, 100)
+
+    productQueryApplication.restClient = restClient
+    productQueryApplication.cacheApplication = cacheApplication
+    productQueryApplication.productService = productService
+  }
+
+  def "use last known data definitions when data-definition times out"() {
+    given:
+    SettableListenableFuture response = new SettableListenableFuture()
+    response.setException(new SocketTimeoutException("Read timed out"))
+    asyncRestTemplate.exchange(_ as String, _, _, _ as ParameterizedTypeReference) >> response
+
+    ProductDataView dataView = new ProductDataView(id: 'data1', dataId: 'temperature')
+    cacheApplication.getProducts(DEVELOPER_ID) >>
+        CacheEntry.of([new ProductView(id: 'product1'), new ProductView(id: 'product2')],
+            Long.MAX_VALUE)
+    cacheApplication.getProductData(DEVELOPER_ID, ['product1', 'product2']) >> [:]
+    cacheApplication.getLastKnownProductData(DEVELOPER_ID, ['product1', 'product2']) >>
+        [product1: [dataView]]
+
+    when:
+    List<ProductView> products = productQueryApplication.getAllByDeveloperId(DEVELOPER_ID)
+
+    then:
+    products*.id == ['product1', 'product2']
+    products[0].dataDefinitions == [dataView]
+    products[1].dataDefinitions == []
+    0 * cacheApplication.fillProductData(*_)
+  }
+
+  def "do not read data definitions of a product that does not exist"() {
+    given:
+    productService.get('unknown') >> { throw new NotExistException("Product not exist") }
+
+    when:
+    ProductView product = productQueryApplication.get('unknown', DEVELOPER_ID)
+
+    then:
+    product == null
+    1 * cacheApplication.fillMissingProduct(DEVELOPER_ID, 'unknown', _)
+    0 * cacheApplication.getProductData(*_)
+    0 * cacheApplication.fillProductData(*_)
+    0 * asyncRestTemplate._
+  }
+
+  def "do not read data definitions of a product of another developer"() {
+    given:
+    productService.get('product1') >> new Product(id: 'product1', developerId: 'developer2')
+
+    when:
+    ProductView product = productQueryApplication.get('product1', DEVELOPER_ID)
+
+    then:
+    product == null
+    1 * cacheApplication.fillMissingProduct(DEVELOPER_ID, 'product1', _)
+    0 * cacheApplication.getProductData(*_)
+    0 * cacheApplication.fillProductData(*_)
+    0 * asyncRestTemplate._
+  }
+
+  def "removed data definitions are not cached"() {
+    given:
+    ProductDataView kept = new ProductDataView(id: 'data1')
+    ProductDataView removed = new ProductDataView(id: 'data2')
+    productQueryApplication.restClient = Stub(RestClient) {
+      getProductDataAsync(DEVELOPER_ID, 'product1') >>
+          CompletableFuture.completedFuture([kept, removed])
+    }
+    cacheApplication.getProductData(DEVELOPER_ID, ['product1']) >> [:]
+    cacheApplication.getGeneration(DEVELOPER_ID) >> 7L
+
+    when:
+    List<ProductDataView> dataViews = productQueryApplication
+        .getDataDefinitionsAsync(DEVELOPER_ID, 'product1', ['data2']).join()
+
+    then:
+    dataViews == [kept]
+    1 * cacheApplication.fillProductData(DEVELOPER_ID, [product1: [kept]], 7L)
+  }
+
+  def "removed data definitions are not returned from cache"() {
+    given:
+    ProductDataView kept = new ProductDataView(id: 'data1')
+    ProductDataView removed = new ProductDataView(id: 'data2')
+    cacheApplication.getProductData(DEVELOPER_ID, ['product1']) >>
+        [product1: CacheEntry.of([kept, removed], Long.MAX_VALUE)]
+
+    when:
+    List<ProductDataView> dataViews = productQueryApplication
+        .getDataDefinitionsAsync(DEVELOPER_ID, 'product1', ['data2']).join()
+
+    then:
+    dataViews == [kept]
+    0 * cacheApplication.fillProductData(*_)
+    0 * asyncRestTemplate._
+  }
+}
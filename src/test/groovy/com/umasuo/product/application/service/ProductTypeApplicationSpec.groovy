@@ -0,0 +1,74 @@
+package com.umasuo.product.application.service
+
+import com.umasuo.product.application.dto.CommonDataView
+import com.umasuo.product.application.dto.ProductTypeView
+import com.umasuo.product.domain.model.ProductType
+import com.umasuo.product.domain.service.ProductTypeService
+import com.umasuo.product.infrastructure.client.Bulkhead
+import com.umasuo.product.infrastructure.client.CircuitBreaker
+import com.umasuo.product.infrastructure.client.LoadBalancer
+import org.springframework.util.concurrent.SettableListenableFuture
+import org.springframework.web.client.AsyncRestTemplate
+import spock.lang.Specification
+
+/**
+ * Test that product types are returned with the last known platform data when data-definition
+ * times out.
+ */
+class ProductTypeApplicationSpec extends Specification {
+
+  ProductTypeApplication productTypeApplication = new ProductTypeApplication()
+
+  CacheApplication cacheApplication = Mock(CacheApplication)
+
+  ProductTypeService productTypeService = Mock(ProductTypeService)
+
+  AsyncRestTemplate asyncRestTemplate = Mock(AsyncRestTemplate)
+
+  def setup() {
+    RestClient restClient = new RestClient()
+    restClient.asyncRestTemplate = asyncRestTemplate
+    restClient.loadBalancer = new LoadBalancer(['http://a'], 3, 30000, 100)
+    restClient.circuitBreaker = new CircuitBreaker("data-definition", 100, 30000)
+    restClient.productTypeDataBulkhead = new Bulkhead(10)
+
+    productTypeApplication.restClient = restClient
+    productTypeApplication.cacheApplication = cacheApplication
+    productTypeApplication.productTypeService = productTypeService
+
+    SettableListenableFuture<byte[]> response = new SettableListenableFuture<>()
+    response.setException(new SocketTimeoutException("Read timed out"))
+    asyncRestTemplate.exchange(_ as String, _, _, byte[]) >> response
+
+    productTypeService.getAll() >> [new ProductType(id: 'type1', createdAt: 2L),
+                                    new ProductType(id: 'type2', createdAt: 1L)]
+  }
+
+  def "use last known platform data when data-definition times out"() {
+    given:
+    CommonDataView dataView = new CommonDataView(id: 'data1', dataId: 'power')
+    cacheApplication.getLastKnownProductTypeData() >> [type1: [dataView]]
+
+    when:
+    List<ProductTypeView> productTypes = productTypeApplication.getAll()
+
+    then:
+    productTypes*.id == ['type1', 'type2']
+    productTypes[0].data == [dataView]
+    productTypes[1].data == []
+    0 * cacheApplication.fillProductTypes(*_)
+    0 * cacheApplication.rememberProductTypeData(_)
+  }
+
+  def "drop the cached catalog when rebuilding after a change times out"() {
+    given:
+    cacheApplication.getLastKnownProductTypeData() >> [:]
+
+    when:
+    productTypeApplication.refreshCatalog()
+
+    then:
+    1 * cacheApplication.evictProductTypes()
+    0 * cacheApplication.replaceProductTypes(_)
+  }
+}
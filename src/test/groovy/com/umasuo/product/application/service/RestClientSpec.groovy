@@ -0,0 +1,92 @@
+package com.umasuo.product.application.service
+
+import com.umasuo.product.infrastructure.client.Bulkhead
+import com.umasuo.product.infrastructure.client.CircuitBreaker
+import com.umasuo.product.infrastructure.client.LoadBalancer
+import com.umasuo.product.infrastructure.util.FutureUtils
+import org.springframework.http.HttpStatus
+import org.springframework.util.concurrent.SettableListenableFuture
+import org.springframework.web.client.AsyncRestTemplate
+import org.springframework.web.client.HttpClientErrorException
+import org.springframework.web.client.HttpServerErrorException
+import org.springframework.web.client.ResourceAccessException
+import org.springframework.web.client.RestTemplate
+import spock.lang.Specification
+
+/**
+ * Test how results of calls to data-definition are counted by the load balancer, and how
+ * failures are reported to callers.
+ */
+class RestClientSpec extends Specification {
+
+  RestClient restClient = new RestClient()
+
+  RestTemplate restTemplate = Mock(RestTemplate)
+
+  AsyncRestTemplate asyncRestTemplate = Mock(AsyncRestTemplate)
+
+  LoadBalancer loadBalancer = new LoadBalancer(['http://a', 'http://b'], 3, 30000, 100)
+
+  def setup() {
+    restClient.restTemplate = restTemplate
+    restClient.asyncRestTemplate = asyncRestTemplate
+    restClient.loadBalancer = loadBalancer
+    restClient.circuitBreaker = new CircuitBreaker("data-definition", 100, 30000)
+    restClient.productDataBulkhead = new Bulkhead(10)
+    restClient.productTypeDataBulkhead = new Bulkhead(10)
+  }
+
+  def "4xx responses do not eject instances"() {
+    given:
+    restTemplate.getForObject(_ as String, Map) >> {
+      throw new HttpClientErrorException(HttpStatus.NOT_FOUND)
+    }
+
+    when:
+    10.times {
+      try {
+        restClient.checkDefinitionExist("developer1", ["data1"])
+      } catch (HttpClientErrorException ignored) {
+      }
+    }
+
+    then:
+    loadBalancer.stats.every { !it.ejected && it.failures == 0 && it.outstanding == 0 }
+  }
+
+  def "5xx responses eject instances"() {
+    given:
+    restTemplate.getForObject(_ as String, Map) >> {
+      throw new HttpServerErrorException(HttpStatus.INTERNAL_SERVER_ERROR)
+    }
+
+    when:
+    // 两个实例共失败5次，至少一个连续失败了3次
+    5.times {
+      try {
+        restClient.checkDefinitionExist("developer1", ["data1"])
+      } catch (HttpServerErrorException ignored) {
+      }
+    }
+
+    then:
+    loadBalancer.stats.any { it.ejected }
+    loadBalancer.stats.every { it.outstanding == 0 }
+  }
+
+  def "I/O errors of async calls fail with ResourceAccessException"() {
+    given:
+    SettableListenableFuture<byte[]> response = new SettableListenableFuture<>()
+    response.setException(new SocketTimeoutException("Read timed out"))
+    asyncRestTemplate.exchange(_ as String, _, _, byte[]) >> response
+
+    when:
+    FutureUtils.join(restClient.productTypeDataAsync)
+
+    then:
+    ResourceAccessException ex = thrown()
+    ex.cause instanceof SocketTimeoutException
+    loadBalancer.stats.sum { it.failures } == 1
+    loadBalancer.stats.every { it.outstanding == 0 }
+  }
+}
@@ -0,0 +1,166 @@
+package com.umasuo.product.application.service.update
+
+import com.umasuo.exception.ParametersException
+import com.umasuo.product.application.dto.ProductTypeView
+import com.umasuo.product.application.dto.action.AddDataDefinition
+import com.umasuo.product.application.service.CacheApplication
+import com.umasuo.product.application.service.ProductQueryApplication
+import com.umasuo.product.application.service.ProductTypeApplication
+import com.umasuo.product.application.service.RestClient
+import com.umasuo.product.domain.model.Product
+import org.springframework.scheduling.concurrent.ConcurrentTaskExecutor
+import spock.lang.Specification
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+/**
+ * Test for AddDataDefinitionService.handleAll, creations run concurrently and the test decides
+ * the order they finish.
+ * RestClient is not a Spock mock, because calls to mocks are serialized and a creation waiting
+ * for another would block it.
+ */
+class AddDataDefinitionServiceSpec extends Specification {
+
+  AddDataDefinitionService service = new AddDataDefinitionService()
+
+  /**
+   * Creation of each dataId, called with the action.
+   */
+  Map<String, Closure<String>> creations = [:]
+
+  /**
+   * DataIds sent to data-definition.
+   */
+  List<String> sent = [].asSynchronized()
+
+  RestClient restClient = new RestClient() {
+    @Override
+    String createDataDefinition(String developerId, AddDataDefinition action) {
+      sent << action.dataId
+      return creations[action.dataId].call()
+    }
+  }
+
+  CacheApplication cacheApplication = Mock(CacheApplication)
+
+  ProductTypeApplication productTypeApplication = Mock(ProductTypeApplication)
+
+  ProductQueryApplication productQueryApplication = Mock(ProductQueryApplication)
+
+  ExecutorService executor = Executors.newFixedThreadPool(3)
+
+  Product product = new Product(id: 'product1', developerId: 'developer1',
+      productType: 'type1', dataDefineIds: ['existing'])
+
+  /**
+   * Finished creations of each dataId.
+   */
+  Map<String, CountDownLatch> finished = ['d1', 'd2', 'd3'].collectEntries {
+    [(it): new CountDownLatch(1)]
+  }
+
+  /**
+   * DataIds in the order their creations finished.
+   */
+  List<String> finishOrder = [].asSynchronized()
+
+  def setup() {
+    service.restClient = restClient
+    service.cacheApplication = cacheApplication
+    service.productTypeApplication = productTypeApplication
+    service.productQueryApplication = productQueryApplication
+    service.dataDefinitionExecutor = new ConcurrentTaskExecutor(executor)
+
+    productTypeApplication.get('type1') >> new ProductTypeView()
+    productQueryApplication.getDataDefinitions('developer1', 'product1') >> []
+  }
+
+  def cleanup() {
+    executor.shutdownNow()
+  }
+
+  def "new ids are added in the order of actions when creations finish in reverse"() {
+    given:
+    // d1等d2结束，d2等d3结束
+    created('d1', 'd2')
+    created('d2', 'd3')
+    created('d3', null)
+    List<String> createdIds = []
+
+    when:
+    service.handleAll(product, actions('d1', 'd2', 'd3'), createdIds)
+
+    then:
+    finishOrder == ['d3', 'd2', 'd1']
+    product.dataDefineIds == ['existing', 'id-d1', 'id-d2', 'id-d3']
+    createdIds == ['id-d1', 'id-d2', 'id-d3']
+    sent.toSet() == ['d1', 'd2', 'd3'] as Set
+    1 * cacheApplication.deleteProductData('developer1', 'product1')
+  }
+
+  def "ids created after a failure still reach createdIds"() {
+    given:
+    // d2最先失败，d1和d3在它之后才创建成功
+    created('d1', 'd2')
+    failed('d2')
+    created('d3', 'd2')
+    List<String> createdIds = []
+
+    when:
+    service.handleAll(product, actions('d1', 'd2', 'd3'), createdIds)
+
+    then:
+    ParametersException ex = thrown()
+    ex.message == 'd2 failed'
+    finishOrder.first() == 'd2'
+    createdIds == ['id-d1', 'id-d3']
+    product.dataDefineIds == ['existing']
+    1 * cacheApplication.deleteProductData('developer1', 'product1')
+  }
+
+  def "nothing is created when a dataId is duplicated"() {
+    when:
+    service.handleAll(product, actions('d1', 'd1'), [])
+
+    then:
+    thrown(RuntimeException)
+    sent.isEmpty()
+    product.dataDefineIds == ['existing']
+  }
+
+  private List<AddDataDefinition> actions(String... dataIds) {
+    return dataIds.collect { new AddDataDefinition(dataId: it) }
+  }
+
+  /**
+   * The creation of dataId succeeds after the creation of after finished.
+   */
+  private void created(String dataId, String after) {
+    creations[dataId] = {
+      await(after)
+      finish(dataId)
+      return 'id-' + dataId
+    }
+  }
+
+  private void failed(String dataId) {
+    creations[dataId] = {
+      finish(dataId)
+      throw new ParametersException(dataId + ' failed')
+    }
+  }
+
+  private void await(String dataId) {
+    if (dataId != null && !finished[dataId].await(5, TimeUnit.SECONDS)) {
+      throw new IllegalStateException('Creation of ' + dataId + ' not finished')
+    }
+  }
+
+  private void finish(String dataId) {
+    finishOrder << dataId
+    finished[dataId].countDown()
+  }
+}
@@ -0,0 +1,67 @@
+package com.umasuo.product.infrastructure.cache
+
+import com.umasuo.product.application.dto.EnumType
+import com.umasuo.product.application.dto.ProductDataView
+import com.umasuo.product.application.dto.ProductView
+import com.umasuo.product.application.dto.ValueType
+import org.springframework.data.redis.serializer.RedisSerializer
+import org.springframework.data.redis.serializer.SerializationException
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.nio.charset.StandardCharsets
+
+/**
+ * Test that the Jackson codecs round trip cached views and refuse classes outside of them.
+ */
+class CacheCodecSpec extends Specification {
+
+  @Unroll
+  def "#codec round trips a product with typed functions"() {
+    given:
+    RedisSerializer<Object> serializer = codec.serializer()
+    ProductView product = CacheCodecBenchmark.sampleProduct()
+
+    when:
+    ProductView result = serializer.deserialize(serializer.serialize(product)) as ProductView
+
+    then:
+    result.id == product.id
+    result.functions.size() == 10
+    result.functions[0].dataType instanceof ValueType
+    (result.functions[1].dataType as EnumType).values == ['low', 'medium', 'high']
+    result.dataDefinitions == product.dataDefinitions
+
+    where:
+    codec << [CacheCodec.JSON, CacheCodec.SMILE]
+  }
+
+  def "lists of data definitions keep their element type"() {
+    given:
+    RedisSerializer<Object> serializer = CacheCodec.JSON.serializer()
+    List<ProductDataView> dataViews = [new ProductDataView(id: 'data1')]
+
+    expect:
+    serializer.deserialize(serializer.serialize(dataViews)) == dataViews
+  }
+
+  @Unroll
+  def "refuse to instantiate #className"() {
+    given:
+    RedisSerializer<Object> serializer = CacheCodec.JSON.serializer()
+
+    when:
+    serializer.deserialize(payload.getBytes(StandardCharsets.UTF_8))
+
+    then:
+    SerializationException ex = thrown()
+    ex.cause.message.contains('Class not allowed in cache: ' + className)
+
+    where:
+    className                      | payload
+    'java.io.File'                 | '["java.io.File","/etc/passwd"]'
+    'java.net.URL'                 | '["java.net.URL","http://example.com"]'
+    'com.umasuo.product.domain.model.Product' |
+        '{"@class":"com.umasuo.product.domain.model.Product","id":"1"}'
+  }
+}
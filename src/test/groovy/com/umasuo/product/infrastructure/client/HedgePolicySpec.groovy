@@ -0,0 +1,211 @@
+package com.umasuo.product.infrastructure.client
+
+import spock.lang.Specification
+
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
+import java.util.function.Supplier
+
+/**
+ * Test for HedgePolicy, time and the hedge timer are controlled by the test.
+ */
+class HedgePolicySpec extends Specification {
+
+  ManualClock clock = new ManualClock()
+
+  ScheduledExecutorService scheduler = Mock(ScheduledExecutorService)
+
+  /**
+   * Hedge timers scheduled by the policy.
+   */
+  List<Runnable> timers = []
+
+  /**
+   * Delays of the hedge timers in millis.
+   */
+  List<Long> delays = []
+
+  /**
+   * Hedges sent by the policy.
+   */
+  List<CompletableFuture<String>> hedges = []
+
+  def setup() {
+    scheduler.schedule(_ as Runnable, _, TimeUnit.MILLISECONDS) >> { args ->
+      timers << (args[0] as Runnable)
+      delays << (args[1] as long)
+      return null
+    }
+  }
+
+  def "no hedge before there are latency samples"() {
+    given:
+    HedgePolicy policy = policy(1, 1)
+
+    when:
+    CompletableFuture<String> first = new CompletableFuture<>()
+    CompletableFuture<String> result = call(policy, first)
+
+    then:
+    result.is(first)
+    timers.isEmpty()
+  }
+
+  def "wait the percentile of recent latencies before hedging"() {
+    given:
+    HedgePolicy policy = policy(10, 10)
+    (1..10).each { record(policy, it * 10) }
+
+    when:
+    call(policy, new CompletableFuture<>())
+
+    then: "the 90th percentile of 10, 20 ... 100"
+    delays == [90L]
+  }
+
+  def "wait at least the min delay"() {
+    given:
+    HedgePolicy policy = new HedgePolicy(true, 90, 500, 10, 10, 10, clock)
+    record(policy, 10)
+
+    when:
+    call(policy, new CompletableFuture<>())
+
+    then:
+    delays == [500L]
+  }
+
+  def "the faster hedge wins and the first call is cancelled"() {
+    given:
+    HedgePolicy policy = policy(10, 10)
+    record(policy, 50)
+    CompletableFuture<String> first = new CompletableFuture<>()
+
+    when:
+    CompletableFuture<String> result = call(policy, first)
+    timers[0].run()
+
+    then:
+    hedges.size() == 1
+
+    when:
+    hedges[0].complete("hedge")
+
+    then:
+    result.get() == "hedge"
+    first.isCancelled()
+    policy.stats.won == 1L
+  }
+
+  def "the first call wins and the hedge is cancelled"() {
+    given:
+    HedgePolicy policy = policy(10, 10)
+    record(policy, 50)
+    CompletableFuture<String> first = new CompletableFuture<>()
+
+    when:
+    CompletableFuture<String> result = call(policy, first)
+    timers[0].run()
+    first.complete("first")
+
+    then:
+    result.get() == "first"
+    hedges[0].isCancelled()
+    policy.stats.won == 0L
+  }
+
+  def "no hedge if the first call finished before the timer"() {
+    given:
+    HedgePolicy policy = policy(10, 10)
+    record(policy, 50)
+    CompletableFuture<String> first = new CompletableFuture<>()
+
+    when:
+    CompletableFuture<String> result = call(policy, first)
+    first.complete("first")
+    timers[0].run()
+
+    then:
+    result.get() == "first"
+    hedges.isEmpty()
+  }
+
+  def "cancelling the result cancels both calls"() {
+    given:
+    HedgePolicy policy = policy(10, 10)
+    record(policy, 50)
+    CompletableFuture<String> first = new CompletableFuture<>()
+
+    when:
+    CompletableFuture<String> result = call(policy, first)
+    timers[0].run()
+    result.cancel(true)
+
+    then:
+    first.isCancelled()
+    hedges[0].isCancelled()
+  }
+
+  def "hedges are limited by the token budget"() {
+    given: "each call earns half a token"
+    HedgePolicy policy = policy(0.5, 1)
+
+    when: "the sample call and the next call earn one token"
+    record(policy, 50)
+    call(policy, new CompletableFuture<>())
+    timers[0].run()
+
+    then:
+    hedges.size() == 1
+
+    when: "the next call only earns half a token"
+    call(policy, new CompletableFuture<>())
+    timers[1].run()
+
+    then:
+    hedges.size() == 1
+    policy.stats.hedged == 1L
+    policy.stats.budgetExhausted == 1L
+  }
+
+  def "tokens are capped by the max burst"() {
+    given: "one token for each call, at most one saved"
+    HedgePolicy policy = policy(1, 1)
+    record(policy, 50)
+    record(policy, 50)
+
+    when: "two slow calls, both reach the timer after the other call started"
+    call(policy, new CompletableFuture<>())
+    call(policy, new CompletableFuture<>())
+    timers.each { it.run() }
+
+    then: "only the saved token and the one earned"
+    hedges.size() == 1
+    policy.stats.budgetExhausted == 1L
+  }
+
+  private HedgePolicy policy(double budgetRatio, double maxTokens) {
+    return new HedgePolicy(true, 90, 0, budgetRatio, maxTokens, 10, clock)
+  }
+
+  /**
+   * Send a call that takes the latency, without hedging.
+   */
+  private void record(HedgePolicy policy, long latency) {
+    CompletableFuture<String> first = new CompletableFuture<>()
+    call(policy, first)
+    clock.advance(latency)
+    first.complete("sample")
+    timers.clear()
+    delays.clear()
+  }
+
+  private CompletableFuture<String> call(HedgePolicy policy, CompletableFuture<String> first) {
+    return policy.call(scheduler, { first } as Supplier<CompletableFuture<String>>, {
+      CompletableFuture<String> hedge = new CompletableFuture<>()
+      hedges << hedge
+      return hedge
+    } as Supplier<CompletableFuture<String>>)
+  }
+}
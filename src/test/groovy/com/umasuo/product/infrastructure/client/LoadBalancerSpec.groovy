@@ -0,0 +1,159 @@
+package com.umasuo.product.infrastructure.client
+
+import spock.lang.Specification
+
+/**
+ * Test for LoadBalancer, ejections are timed by a manual clock.
+ */
+class LoadBalancerSpec extends Specification {
+
+  ManualClock clock = new ManualClock()
+
+  def "choose the less loaded instance of the two picked"() {
+    given:
+    LoadBalancer balancer = balancer(['a', 'b'], 100)
+    start(balancer, 'a', 2)
+
+    expect:
+    (1..20).every { balancer.choose().url == 'b' }
+  }
+
+  def "never choose the most loaded instance when loads differ"() {
+    given:
+    LoadBalancer balancer = balancer(['a', 'b', 'c'], 100)
+    start(balancer, 'b', 1)
+    start(balancer, 'c', 5)
+
+    when:
+    List<String> chosen = (1..100).collect { balancer.choose().url }
+
+    then:
+    !chosen.contains('c')
+  }
+
+  def "eject an instance after consecutive failures"() {
+    given:
+    LoadBalancer balancer = balancer(['a', 'b'], 100)
+
+    when:
+    fail(balancer, 'a', 2)
+
+    then:
+    !stats(balancer, 'a').ejected
+    stats(balancer, 'a').failures == 2
+
+    when:
+    fail(balancer, 'a', 1)
+
+    then:
+    stats(balancer, 'a').ejected
+    stats(balancer, 'a').ejections == 1
+    (1..20).every { balancer.choose().url == 'b' }
+  }
+
+  def "a success resets the consecutive failures"() {
+    given:
+    LoadBalancer balancer = balancer(['a', 'b'], 100)
+
+    when:
+    fail(balancer, 'a', 2)
+    succeed(balancer, 'a')
+    fail(balancer, 'a', 2)
+
+    then:
+    !stats(balancer, 'a').ejected
+    stats(balancer, 'a').failures == 2
+  }
+
+  def "an ejected instance comes back after the eject time"() {
+    given:
+    LoadBalancer balancer = balancer(['a', 'b'], 100)
+    fail(balancer, 'a', 3)
+
+    when:
+    clock.advance(999)
+
+    then:
+    stats(balancer, 'a').ejected
+
+    when:
+    clock.advance(1)
+
+    then:
+    !stats(balancer, 'a').ejected
+    (1..100).collect { balancer.choose().url }.contains('a')
+  }
+
+  def "ejected instances are capped by the max ejection percent"() {
+    given:
+    LoadBalancer balancer = balancer(['a', 'b', 'c', 'd'], 50)
+
+    when:
+    ['a', 'b', 'c', 'd'].each { fail(balancer, it, 3) }
+
+    then:
+    balancer.stats.count { it.ejected } == 2
+    !stats(balancer, 'c').ejected
+    !stats(balancer, 'd').ejected
+    (1..100).collect { balancer.choose().url }.toSet() == ['c', 'd'] as Set
+  }
+
+  def "choose from all instances when all are ejected"() {
+    given:
+    LoadBalancer balancer = balancer(['a', 'b'], 100)
+    fail(balancer, 'a', 3)
+    fail(balancer, 'b', 3)
+
+    expect:
+    balancer.stats.every { it.ejected }
+    (1..100).collect { balancer.choose().url }.toSet() == ['a', 'b'] as Set
+  }
+
+  def "choose another instance than the excluded one even if it is ejected"() {
+    given:
+    LoadBalancer balancer = balancer(['a', 'b'], 100)
+    fail(balancer, 'b', 3)
+    LoadBalancer.Instance a = instance(balancer, 'a')
+
+    expect:
+    (1..20).every { balancer.choose(a).url == 'b' }
+  }
+
+  def "a single instance is always chosen"() {
+    given:
+    LoadBalancer balancer = balancer(['a'], 100)
+    fail(balancer, 'a', 3)
+
+    expect:
+    balancer.choose().url == 'a'
+    balancer.choose(instance(balancer, 'a')).url == 'a'
+  }
+
+  private LoadBalancer balancer(List<String> urls, int maxEjectionPercent) {
+    return new LoadBalancer(urls, 3, 1000, maxEjectionPercent, clock)
+  }
+
+  private static LoadBalancer.Instance instance(LoadBalancer balancer, String url) {
+    return balancer.instances.find { it.url == url }
+  }
+
+  private static Map<String, Object> stats(LoadBalancer balancer, String url) {
+    return balancer.stats.find { it.url == url }
+  }
+
+  private static void start(LoadBalancer balancer, String url, int times) {
+    times.times { balancer.onStart(instance(balancer, url)) }
+  }
+
+  private static void fail(LoadBalancer balancer, String url, int times) {
+    times.times {
+      balancer.onStart(instance(balancer, url))
+      balancer.onFailure(instance(balancer, url))
+    }
+  }
+
+  private static void succeed(LoadBalancer balancer, String url) {
+    balancer.onStart(instance(balancer, url))
+    balancer.onSuccess(instance(balancer, url))
+  }
+}
@@ -0,0 +1,38 @@
+package com.umasuo.product.infrastructure.client
+
+import java.time.Clock
+import java.time.Instant
+import java.time.ZoneId
+import java.time.ZoneOffset
+
+/**
+ * Clock that only moves when the test advances it.
+ */
+class ManualClock extends Clock {
+
+  long millis = 1000
+
+  void advance(long delta) {
+    millis += delta
+  }
+
+  @Override
+  long millis() {
+    return millis
+  }
+
+  @Override
+  Instant instant() {
+    return Instant.ofEpochMilli(millis)
+  }
+
+  @Override
+  ZoneId getZone() {
+    return ZoneOffset.UTC
+  }
+
+  @Override
+  Clock withZone(ZoneId zone) {
+    return this
+  }
+}
@@ -0,0 +1,170 @@
+package com.umasuo.product.infrastructure.client
+
+import spock.lang.Specification
+
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ScheduledExecutorService
+import java.util.function.BiFunction
+
+/**
+ * Test for RequestCollapser.
+ */
+class RequestCollapserSpec extends Specification {
+
+  ScheduledExecutorService scheduler = Mock(ScheduledExecutorService)
+
+  /**
+   * Flush tasks scheduled by the collapser, run them to end the window.
+   */
+  List<Runnable> windows = []
+
+  /**
+   * Batches sent by the collapser, as [group, keys].
+   */
+  List<List> loaded = []
+
+  /**
+   * Result of each batch, key is the group.
+   */
+  Map<String, CompletableFuture<Map<String, String>>> results = [:]
+
+  def setup() {
+    scheduler.schedule(_ as Runnable, _, _) >> { args ->
+      windows << (args[0] as Runnable)
+      return null
+    }
+  }
+
+  def "flush when the batch is full without waiting for the window"() {
+    given:
+    RequestCollapser<String, String, String> collapser = collapser(2)
+
+    when:
+    CompletableFuture<String> a = collapser.submit("g1", "a")
+
+    then:
+    loaded.isEmpty()
+
+    when:
+    CompletableFuture<String> b = collapser.submit("g1", "b")
+
+    then:
+    loaded == [["g1", ["a", "b"]]]
+
+    when:
+    results.g1.complete([a: "A", b: "B"])
+
+    then:
+    a.get() == "A"
+    b.get() == "B"
+  }
+
+  def "flush when the window ends, duplicate keys are sent once"() {
+    given:
+    RequestCollapser<String, String, String> collapser = collapser(10)
+
+    when:
+    CompletableFuture<String> first = collapser.submit("g1", "a")
+    CompletableFuture<String> second = collapser.submit("g1", "a")
+    CompletableFuture<String> b = collapser.submit("g1", "b")
+
+    then:
+    loaded.isEmpty()
+    windows.size() == 1
+
+    when:
+    windows[0].run()
+    results.g1.complete([a: "A", b: "B"])
+
+    then:
+    loaded == [["g1", ["a", "b"]]]
+    first.get() == "A"
+    second.get() == "A"
+    b.get() == "B"
+  }
+
+  def "a new batch is opened after the previous one is sent"() {
+    given:
+    RequestCollapser<String, String, String> collapser = collapser(10)
+
+    when:
+    collapser.submit("g1", "a")
+    windows[0].run()
+    collapser.submit("g1", "b")
+
+    then:
+    windows.size() == 2
+    loaded == [["g1", ["a"]]]
+
+    when:
+    windows[0].run()
+    windows[1].run()
+
+    then: "the first window does not flush the batch opened after it"
+    loaded == [["g1", ["a"]], ["g1", ["b"]]]
+  }
+
+  def "groups are sent separately"() {
+    given:
+    RequestCollapser<String, String, String> collapser = collapser(10)
+
+    when:
+    collapser.submit("g1", "a")
+    collapser.submit("g2", "b")
+    windows.each { it.run() }
+
+    then:
+    loaded == [["g1", ["a"]], ["g2", ["b"]]]
+  }
+
+  def "keys missing in the result get null, a failed batch only fails it's own callers"() {
+    given:
+    RequestCollapser<String, String, String> collapser = collapser(10)
+
+    when:
+    CompletableFuture<String> a = collapser.submit("g1", "a")
+    CompletableFuture<String> missing = collapser.submit("g1", "missing")
+    CompletableFuture<String> b = collapser.submit("g2", "b")
+    CompletableFuture<String> c = collapser.submit("g2", "c")
+    windows.each { it.run() }
+    results.g1.complete([a: "A"])
+    results.g2.completeExceptionally(new IllegalStateException("g2 failed"))
+
+    then:
+    a.get() == "A"
+    missing.get() == null
+
+    when:
+    b.get()
+
+    then:
+    ExecutionException ex = thrown()
+    ex.cause.message == "g2 failed"
+    c.isCompletedExceptionally()
+  }
+
+  def "callers fail if the loader throws"() {
+    given:
+    RequestCollapser<String, String, String> collapser = new RequestCollapser<>(scheduler, 10, 1,
+        { group, keys -> throw new IllegalStateException("can not send") }
+            as BiFunction<String, List<String>, CompletableFuture<Map<String, String>>>)
+
+    when:
+    collapser.submit("g1", "a").get()
+
+    then:
+    ExecutionException ex = thrown()
+    ex.cause.message == "can not send"
+  }
+
+  private RequestCollapser<String, String, String> collapser(int maxBatchSize) {
+    return new RequestCollapser<>(scheduler, 10, maxBatchSize,
+        { String group, List<String> keys ->
+          loaded << [group, new ArrayList<>(keys)]
+          CompletableFuture<Map<String, String>> result = new CompletableFuture<>()
+          results[group] = result
+          return result
+        } as BiFunction<String, List<String>, CompletableFuture<Map<String, String>>>)
+  }
+}
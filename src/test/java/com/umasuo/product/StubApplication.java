@@ -0,0 +1,24 @@
+package com.umasuo.product;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+
+/**
+ * 使用进程内的data-definition替身启动服务，用于压测和集成测试：gradle bootRunStub。
+ */
+public final class StubApplication {
+
+  /**
+   * Private constructor.
+   */
+  private StubApplication() {
+  }
+
+  /**
+   * Start the service with the stub profile.
+   *
+   * @param args the args
+   */
+  public static void main(String[] args) {
+    new SpringApplicationBuilder(Application.class).profiles("stub").run(args);
+  }
+}
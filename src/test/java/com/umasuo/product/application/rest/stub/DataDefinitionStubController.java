@@ -0,0 +1,420 @@
+package com.umasuo.product.application.rest.stub;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.umasuo.product.application.dto.CopyRequest;
+import com.umasuo.product.application.dto.action.AddDataDefinition;
+import com.umasuo.product.application.dto.action.AddProductTypeData;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+/**
+ * 进程内的data-definition替身，实现RestClient调用的所有接口，只在stub profile下启用。
+ * 用于没有data-definition时的压测和集成测试，放在测试代码中，不会打包到服务里；
+ * 用StubApplication启动，datadefinition.service.uri指向本服务的/stub/data-definitions。
+ * 读和写的延迟、错误率分别配置，延迟由调度线程完成，不占用请求线程。
+ */
+@Profile("stub")
+@RestController
+public class DataDefinitionStubController {
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOG = LoggerFactory.getLogger(DataDefinitionStubController.class);
+
+  /**
+   * Root path: /stub/data-definitions.
+   */
+  public static final String ROOT = "/stub/data-definitions";
+
+  /**
+   * Platform data path: /stub/data-definitions/platform.
+   */
+  public static final String PLATFORM_DATA = ROOT + "/platform";
+
+  /**
+   * Data definition path with id: /stub/data-definitions/{id}.
+   */
+  public static final String DATA_DEFINITION_WITH_ID = ROOT + "/{id}";
+
+  /**
+   * Copy path: /stub/data-definitions/copy.
+   */
+  public static final String DATA_DEFINITION_COPY = ROOT + "/copy";
+
+  /**
+   * Platform data path with id: /stub/data-definitions/platform/{id}.
+   */
+  public static final String PLATFORM_DATA_WITH_ID = PLATFORM_DATA + "/{id}";
+
+  /**
+   * Median latency of reads.
+   */
+  @Value("${stub.data-definition.read.median-millis:5}")
+  private transient long readMedianMillis;
+
+  /**
+   * The 99th percentile latency of reads.
+   */
+  @Value("${stub.data-definition.read.p99-millis:50}")
+  private transient long readP99Millis;
+
+  /**
+   * Error rate of reads.
+   */
+  @Value("${stub.data-definition.read.error-rate:0}")
+  private transient double readErrorRate;
+
+  /**
+   * Median latency of writes.
+   */
+  @Value("${stub.data-definition.write.median-millis:10}")
+  private transient long writeMedianMillis;
+
+  /**
+   * The 99th percentile latency of writes.
+   */
+  @Value("${stub.data-definition.write.p99-millis:100}")
+  private transient long writeP99Millis;
+
+  /**
+   * Error rate of writes.
+   */
+  @Value("${stub.data-definition.write.error-rate:0}")
+  private transient double writeErrorRate;
+
+  /**
+   * Http status of injected errors.
+   */
+  @Value("${stub.data-definition.error-status:503}")
+  private transient int errorStatus;
+
+  /**
+   * Threads to send delayed responses.
+   */
+  @Value("${stub.data-definition.threads:4}")
+  private transient int threads;
+
+  /**
+   * In memory data.
+   */
+  @Autowired
+  private transient DataDefinitionStubStore store;
+
+  /**
+   * ObjectMapper.
+   */
+  @Autowired
+  private transient ObjectMapper objectMapper;
+
+  /**
+   * Latency and errors of reads.
+   */
+  private transient StubBehavior readBehavior;
+
+  /**
+   * Latency and errors of writes.
+   */
+  private transient StubBehavior writeBehavior;
+
+  /**
+   * Scheduler to send delayed responses.
+   */
+  private transient ScheduledExecutorService scheduler;
+
+  /**
+   * Build behaviors and the scheduler.
+   */
+  @PostConstruct
+  public void init() {
+    readBehavior = new StubBehavior(readMedianMillis, readP99Millis, readErrorRate, errorStatus);
+    writeBehavior = new StubBehavior(writeMedianMillis, writeP99Millis, writeErrorRate,
+        errorStatus);
+
+    scheduler = Executors.newScheduledThreadPool(threads, new ThreadFactoryBuilder()
+        .setNameFormat("data-definition-stub-%d").setDaemon(true).build());
+
+    LOG.info("Data-definition stub started. read: {}, write: {}.", readBehavior, writeBehavior);
+  }
+
+  /**
+   * Stop the scheduler.
+   */
+  @PreDestroy
+  public void destroy() {
+    scheduler.shutdown();
+  }
+
+  /**
+   * Gets data definitions of products.
+   *
+   * @param developerId the developer id
+   * @param productIds the product ids
+   * @return the product data, key is productId
+   */
+  @GetMapping(value = ROOT, params = "productIds")
+  public DeferredResult<ResponseEntity<?>> getProductData(
+      @RequestHeader("developerId") String developerId,
+      @RequestParam("productIds") List<String> productIds) {
+    LOG.debug("Enter. developerId: {}, productIds: {}.", developerId, productIds);
+
+    return respond(readBehavior,
+        () -> ResponseEntity.ok(store.getProductData(developerId, productIds)));
+  }
+
+  /**
+   * Check data definitions exist.
+   *
+   * @param developerId the developer id
+   * @param dataIds the data definition ids
+   * @return the result, key is id
+   */
+  @GetMapping(value = ROOT, params = {"developerId", "dataIds"})
+  public DeferredResult<ResponseEntity<?>> exists(@RequestParam("developerId") String developerId,
+      @RequestParam("dataIds") List<String> dataIds) {
+    LOG.debug("Enter. developerId: {}, dataIds: {}.", developerId, dataIds);
+
+    return respond(readBehavior, () -> ResponseEntity.ok(store.exists(developerId, dataIds)));
+  }
+
+  /**
+   * Create data definition.
+   *
+   * @param developerId the developer id
+   * @param action the action
+   * @return the new data definition
+   */
+  @PostMapping(ROOT)
+  public DeferredResult<ResponseEntity<?>> create(@RequestHeader("developerId") String developerId,
+      @RequestBody AddDataDefinition action) {
+    LOG.debug("Enter. developerId: {}, action: {}.", developerId, action);
+
+    return respond(writeBehavior, () -> ResponseEntity.ok(store.create(developerId, action)));
+  }
+
+  /**
+   * Copy data definitions to the product.
+   *
+   * @param developerId the developer id
+   * @param request the request
+   * @return the new ids
+   */
+  @PostMapping(DATA_DEFINITION_COPY)
+  public DeferredResult<ResponseEntity<?>> copy(@RequestHeader("developerId") String developerId,
+      @RequestBody CopyRequest request) {
+    LOG.debug("Enter. developerId: {}, request: {}.", developerId, request);
+
+    return respond(writeBehavior, () -> ResponseEntity.ok(store.copy(developerId, request)));
+  }
+
+  /**
+   * Delete all data definitions of the product.
+   *
+   * @param productId the product id
+   * @return empty response
+   */
+  @DeleteMapping(value = ROOT, params = "productId")
+  public DeferredResult<ResponseEntity<?>> deleteAll(@RequestParam("productId") String productId) {
+    LOG.debug("Enter. productId: {}.", productId);
+
+    return respond(writeBehavior, () -> {
+      store.deleteAll(productId);
+      return ResponseEntity.ok().build();
+    });
+  }
+
+  /**
+   * Delete a data definition.
+   *
+   * @param id the data definition id
+   * @param productId the product id
+   * @return empty response, 404 if not exist
+   */
+  @DeleteMapping(DATA_DEFINITION_WITH_ID)
+  public DeferredResult<ResponseEntity<?>> delete(@PathVariable("id") String id,
+      @RequestParam(value = "productId", required = false) String productId) {
+    LOG.debug("Enter. id: {}, productId: {}.", id, productId);
+
+    return respond(writeBehavior, () -> found(store.delete(productId, id)));
+  }
+
+  /**
+   * Update a data definition, the stub only increases it's version.
+   *
+   * @param id the data definition id
+   * @return empty response, 404 if not exist
+   */
+  @PutMapping(DATA_DEFINITION_WITH_ID)
+  public DeferredResult<ResponseEntity<?>> update(@PathVariable("id") String id) {
+    LOG.debug("Enter. id: {}.", id);
+
+    return respond(writeBehavior, () -> found(store.update(id)));
+  }
+
+  /**
+   * Gets platform data, supports If-None-Match.
+   *
+   * @param ifNoneMatch the If-None-Match header
+   * @return the platform data, or 304 if not changed
+   */
+  @GetMapping(PLATFORM_DATA)
+  public DeferredResult<ResponseEntity<?>> getPlatformData(
+      @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+    LOG.debug("Enter. ifNoneMatch: {}.", ifNoneMatch);
+
+    return respond(readBehavior, () -> platformData(ifNoneMatch));
+  }
+
+  /**
+   * Create platform data definition.
+   *
+   * @param action the action
+   * @return the new data definition
+   */
+  @PostMapping(PLATFORM_DATA)
+  public DeferredResult<ResponseEntity<?>> createPlatformData(
+      @RequestBody AddProductTypeData action) {
+    LOG.debug("Enter. action: {}.", action);
+
+    return respond(writeBehavior, () -> ResponseEntity.ok(store.createPlatformData(action)));
+  }
+
+  /**
+   * Delete all platform data of the product type.
+   *
+   * @param productTypeId the product type id
+   * @return empty response
+   */
+  @DeleteMapping(value = PLATFORM_DATA, params = "productTypeId")
+  public DeferredResult<ResponseEntity<?>> deleteAllPlatformData(
+      @RequestParam("productTypeId") String productTypeId) {
+    LOG.debug("Enter. productTypeId: {}.", productTypeId);
+
+    return respond(writeBehavior, () -> {
+      store.deleteAllPlatformData(productTypeId);
+      return ResponseEntity.ok().build();
+    });
+  }
+
+  /**
+   * Delete a platform data definition.
+   *
+   * @param id the data definition id
+   * @param productTypeId the product type id
+   * @return empty response, 404 if not exist
+   */
+  @DeleteMapping(PLATFORM_DATA_WITH_ID)
+  public DeferredResult<ResponseEntity<?>> deletePlatformData(@PathVariable("id") String id,
+      @RequestParam(value = "productTypeId", required = false) String productTypeId) {
+    LOG.debug("Enter. id: {}, productTypeId: {}.", id, productTypeId);
+
+    return respond(writeBehavior, () -> found(store.deletePlatformData(productTypeId, id)));
+  }
+
+  /**
+   * Update a platform data definition, the stub only increases it's version.
+   *
+   * @param id the data definition id
+   * @return empty response, 404 if not exist
+   */
+  @PutMapping(PLATFORM_DATA_WITH_ID)
+  public DeferredResult<ResponseEntity<?>> updatePlatformData(@PathVariable("id") String id) {
+    LOG.debug("Enter. id: {}.", id);
+
+    return respond(writeBehavior, () -> found(store.updatePlatformData(id)));
+  }
+
+  /**
+   * Build the platform data response, ETag is the hash of content.
+   *
+   * @param ifNoneMatch the If-None-Match header
+   * @return the platform data, or 304 if not changed
+   */
+  private ResponseEntity<?> platformData(String ifNoneMatch) {
+    byte[] body;
+    try {
+      body = objectMapper.writeValueAsBytes(store.getPlatformData());
+    } catch (JsonProcessingException ex) {
+      throw new IllegalStateException("Can not write platform data", ex);
+    }
+
+    String etag = "\"" + Hashing.sha256().hashBytes(body).toString() + "\"";
+
+    if (etag.equals(ifNoneMatch)) {
+      LOG.debug("Exit. not modified.");
+      return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+    }
+
+    LOG.debug("Exit. platform data size: {}.", body.length);
+    return ResponseEntity.ok().eTag(etag).contentType(MediaType.APPLICATION_JSON_UTF8).body(body);
+  }
+
+  /**
+   * Empty response, 404 if not found.
+   *
+   * @param found is the data definition found
+   * @return the response
+   */
+  private ResponseEntity<?> found(boolean found) {
+    return found ? ResponseEntity.ok().build() : ResponseEntity.notFound().build();
+  }
+
+  /**
+   * Respond after the latency of the behavior, or fail with the error status.
+   * 延迟结束后才读写数据，和真实服务一样，慢请求看到的是较新的数据。
+   *
+   * @param behavior the behavior
+   * @param handler builds the response
+   * @return the deferred result
+   */
+  private DeferredResult<ResponseEntity<?>> respond(StubBehavior behavior,
+      Supplier<ResponseEntity<?>> handler) {
+    DeferredResult<ResponseEntity<?>> result = new DeferredResult<>();
+
+    scheduler.schedule(() -> {
+      if (behavior.nextFailed()) {
+        result.setResult(ResponseEntity.status(behavior.getErrorStatus()).build());
+        return;
+      }
+
+      try {
+        result.setResult(handler.get());
+      } catch (RuntimeException ex) {
+        LOG.warn("Data-definition stub failed.", ex);
+        result.setErrorResult(ex);
+      }
+    }, behavior.nextDelayMillis(), TimeUnit.MILLISECONDS);
+
+    return result;
+  }
+}
@@ -0,0 +1,498 @@
+package com.umasuo.product.application.rest.stub;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.umasuo.product.application.dto.CommonDataView;
+import com.umasuo.product.application.dto.CopyRequest;
+import com.umasuo.product.application.dto.ProductDataView;
+import com.umasuo.product.application.dto.action.AddDataDefinition;
+import com.umasuo.product.application.dto.action.AddProductTypeData;
+import com.umasuo.product.domain.model.ProductType;
+import com.umasuo.product.domain.service.ProductTypeService;
+import com.umasuo.product.infrastructure.enums.Category;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+
+/**
+ * In memory data of the data-definition stub.
+ * 第一次查询到的产品和产品类型会生成固定数量的数据定义，之后的增删改都只保存在内存中。
+ * 每个产品的数据定义列表不可修改，修改时整体替换，读不需要加锁。
+ */
+@Profile("stub")
+@Component
+public class DataDefinitionStubStore {
+
+  /**
+   * Generated data definitions of each product.
+   */
+  @Value("${stub.data-definition.product-data-size:10}")
+  private transient int productDataSize;
+
+  /**
+   * Generated data definitions of each product type.
+   */
+  @Value("${stub.data-definition.platform-data-size:10}")
+  private transient int platformDataSize;
+
+  /**
+   * ProductTypeService, platform data is generated for every product type in database.
+   */
+  @Autowired
+  private transient ProductTypeService productTypeService;
+
+  /**
+   * Data definitions of each product.
+   */
+  private final transient ConcurrentMap<String, List<ProductDataView>> productData =
+      new ConcurrentHashMap<>();
+
+  /**
+   * Developer of each data definition.
+   */
+  private final transient ConcurrentMap<String, String> developers = new ConcurrentHashMap<>();
+
+  /**
+   * Product of each data definition.
+   */
+  private final transient ConcurrentMap<String, String> products = new ConcurrentHashMap<>();
+
+  /**
+   * Platform data definitions of each product type.
+   */
+  private final transient ConcurrentMap<String, List<CommonDataView>> platformData =
+      new ConcurrentHashMap<>();
+
+  /**
+   * Product type of each platform data definition.
+   */
+  private final transient ConcurrentMap<String, String> productTypes = new ConcurrentHashMap<>();
+
+  /**
+   * Gets data definitions of products, generate for products not seen before.
+   *
+   * @param developerId the developer id
+   * @param productIds the product ids
+   * @return the product data, key is productId
+   */
+  public Map<String, List<ProductDataView>> getProductData(String developerId,
+      Collection<String> productIds) {
+    Map<String, List<ProductDataView>> result = Maps.newHashMap();
+
+    productIds.forEach(productId -> result.put(productId,
+        productData.computeIfAbsent(productId, id -> generateProductData(developerId, id))));
+
+    return result;
+  }
+
+  /**
+   * Create data definition.
+   *
+   * @param developerId the developer id
+   * @param action the action
+   * @return the new data definition
+   */
+  public ProductDataView create(String developerId, AddDataDefinition action) {
+    ProductDataView dataView = new ProductDataView();
+    dataView.setId(UUID.randomUUID().toString());
+    dataView.setVersion(0);
+    dataView.setDataId(action.getDataId());
+    dataView.setName(action.getName());
+    dataView.setDescription(action.getDescription());
+    dataView.setSchema(action.getSchema());
+    dataView.setOpenable(action.getOpenable());
+    dataView.setCategory(Category.PRODUCT);
+
+    addProductData(developerId, action.getProductId(), Lists.newArrayList(dataView));
+
+    return dataView;
+  }
+
+  /**
+   * Copy platform and developer data definitions to the product.
+   * 找不到的id不复制，和data-definition一样。
+   *
+   * @param developerId the developer id
+   * @param request the request
+   * @return the new ids
+   */
+  public List<String> copy(String developerId, CopyRequest request) {
+    List<ProductDataView> copies = Lists.newArrayList();
+
+    if (request.getPlatformDataDefinitionIds() != null) {
+      request.getPlatformDataDefinitionIds().stream()
+          .map(this::getPlatformData)
+          .filter(Objects::nonNull)
+          .forEach(source -> copies.add(copyOf(source)));
+    }
+
+    if (request.getDeveloperDataDefinitionIds() != null) {
+      request.getDeveloperDataDefinitionIds().stream()
+          .map(this::getProductData)
+          .filter(Objects::nonNull)
+          .forEach(source -> copies.add(copyOf(source)));
+    }
+
+    addProductData(developerId, request.getProductId(), copies);
+
+    return copies.stream().map(ProductDataView::getId).collect(Collectors.toList());
+  }
+
+  /**
+   * Delete all data definitions of the product.
+   *
+   * @param productId the product id
+   */
+  public void deleteAll(String productId) {
+    List<ProductDataView> removed = productData.put(productId, ImmutableList.of());
+
+    if (removed != null) {
+      removed.forEach(dataView -> forget(dataView.getId()));
+    }
+  }
+
+  /**
+   * Delete a data definition of the product.
+   *
+   * @param productId the product id
+   * @param id the data definition id
+   * @return false if not exist
+   */
+  public boolean delete(String productId, String id) {
+    if (productId == null || !productId.equals(products.get(id))) {
+      return false;
+    }
+
+    productData.computeIfPresent(productId, (key, dataViews) -> dataViews.stream()
+        .filter(dataView -> !dataView.getId().equals(id))
+        .collect(ImmutableList.toImmutableList()));
+    forget(id);
+
+    return true;
+  }
+
+  /**
+   * Update a data definition, only increase it's version.
+   *
+   * @param id the data definition id
+   * @return false if not exist
+   */
+  public boolean update(String id) {
+    String productId = products.get(id);
+
+    if (productId == null) {
+      return false;
+    }
+
+    productData.computeIfPresent(productId, (key, dataViews) -> dataViews.stream()
+        .map(dataView -> dataView.getId().equals(id) ? nextVersion(dataView) : dataView)
+        .collect(ImmutableList.toImmutableList()));
+
+    return true;
+  }
+
+  /**
+   * Check the data definitions of the developer exist.
+   *
+   * @param developerId the developer id
+   * @param ids the data definition ids
+   * @return the result, key is id
+   */
+  public Map<String, Boolean> exists(String developerId, Collection<String> ids) {
+    Map<String, Boolean> result = Maps.newLinkedHashMap();
+
+    ids.forEach(id -> result.put(id, developerId.equals(developers.get(id))));
+
+    return result;
+  }
+
+  /**
+   * Gets platform data of all product types, generate for product types not seen before.
+   *
+   * @return the platform data, key is productTypeId
+   */
+  public Map<String, List<CommonDataView>> getPlatformData() {
+    Map<String, List<CommonDataView>> result = Maps.newTreeMap();
+
+    for (ProductType productType : productTypeService.getAll()) {
+      result.put(productType.getId(), platformData.computeIfAbsent(productType.getId(),
+          this::generatePlatformData));
+    }
+
+    return result;
+  }
+
+  /**
+   * Create platform data definition.
+   *
+   * @param action the action
+   * @return the new data definition
+   */
+  public CommonDataView createPlatformData(AddProductTypeData action) {
+    CommonDataView dataView = new CommonDataView();
+    dataView.setId(UUID.randomUUID().toString());
+    dataView.setVersion(0);
+    dataView.setDataId(action.getDataId());
+    dataView.setName(action.getName());
+    dataView.setDescription(action.getDescription());
+    dataView.setSchema(action.getSchema());
+
+    String productTypeId = action.getProductTypeId();
+    platformData.compute(productTypeId, (key, dataViews) -> ImmutableList.<CommonDataView>builder()
+        .addAll(dataViews == null ? generatePlatformData(productTypeId) : dataViews)
+        .add(dataView)
+        .build());
+    productTypes.put(dataView.getId(), productTypeId);
+
+    return dataView;
+  }
+
+  /**
+   * Delete all platform data of the product type.
+   *
+   * @param productTypeId the product type id
+   */
+  public void deleteAllPlatformData(String productTypeId) {
+    List<CommonDataView> removed = platformData.put(productTypeId, ImmutableList.of());
+
+    if (removed != null) {
+      removed.forEach(dataView -> productTypes.remove(dataView.getId()));
+    }
+  }
+
+  /**
+   * Delete a platform data definition of the product type.
+   *
+   * @param productTypeId the product type id
+   * @param id the data definition id
+   * @return false if not exist
+   */
+  public boolean deletePlatformData(String productTypeId, String id) {
+    if (productTypeId == null || !productTypeId.equals(productTypes.get(id))) {
+      return false;
+    }
+
+    platformData.computeIfPresent(productTypeId, (key, dataViews) -> dataViews.stream()
+        .filter(dataView -> !dataView.getId().equals(id))
+        .collect(ImmutableList.toImmutableList()));
+    productTypes.remove(id);
+
+    return true;
+  }
+
+  /**
+   * Update a platform data definition, only increase it's version.
+   *
+   * @param id the data definition id
+   * @return false if not exist
+   */
+  public boolean updatePlatformData(String id) {
+    String productTypeId = productTypes.get(id);
+
+    if (productTypeId == null) {
+      return false;
+    }
+
+    platformData.computeIfPresent(productTypeId, (key, dataViews) -> dataViews.stream()
+        .map(dataView -> dataView.getId().equals(id) ? nextVersion(dataView) : dataView)
+        .collect(ImmutableList.toImmutableList()));
+
+    return true;
+  }
+
+  /**
+   * Add data definitions to the product.
+   * 新产品从创建开始就由stub管理，不再生成数据定义。
+   *
+   * @param developerId the developer id
+   * @param productId the product id
+   * @param dataViews the data definitions
+   */
+  private void addProductData(String developerId, String productId,
+      List<ProductDataView> dataViews) {
+    productData.compute(productId, (key, existing) -> ImmutableList.<ProductDataView>builder()
+        .addAll(existing == null ? ImmutableList.of() : existing)
+        .addAll(dataViews)
+        .build());
+
+    dataViews.forEach(dataView -> {
+      developers.put(dataView.getId(), developerId);
+      products.put(dataView.getId(), productId);
+    });
+  }
+
+  /**
+   * Generate data definitions for a product not seen before, the same product gets the same ids.
+   *
+   * @param developerId the developer id
+   * @param productId the product id
+   * @return the data definitions
+   */
+  private List<ProductDataView> generateProductData(String developerId, String productId) {
+    ImmutableList.Builder<ProductDataView> result = ImmutableList.builder();
+
+    for (int i = 0; i < productDataSize; i++) {
+      ProductDataView dataView = new ProductDataView();
+      dataView.setId(productId + "-data-" + i);
+      dataView.setVersion(0);
+      dataView.setDataId("d" + i);
+      dataView.setName("Product data " + i);
+      dataView.setSchema("{\"type\":\"integer\"}");
+      dataView.setDescription("Generated by data-definition stub");
+      dataView.setOpenable(Boolean.TRUE);
+      dataView.setCategory(Category.PRODUCT);
+
+      developers.put(dataView.getId(), developerId);
+      products.put(dataView.getId(), productId);
+      result.add(dataView);
+    }
+
+    return result.build();
+  }
+
+  /**
+   * Generate platform data for a product type not seen before.
+   *
+   * @param productTypeId the product type id
+   * @return the platform data
+   */
+  private List<CommonDataView> generatePlatformData(String productTypeId) {
+    ImmutableList.Builder<CommonDataView> result = ImmutableList.builder();
+
+    for (int i = 0; i < platformDataSize; i++) {
+      CommonDataView dataView = new CommonDataView();
+      dataView.setId(productTypeId + "-data-" + i);
+      dataView.setVersion(0);
+      dataView.setDataId("p" + i);
+      dataView.setName("Platform data " + i);
+      dataView.setSchema("{\"type\":\"integer\"}");
+      dataView.setDescription("Generated by data-definition stub");
+
+      productTypes.put(dataView.getId(), productTypeId);
+      result.add(dataView);
+    }
+
+    return result.build();
+  }
+
+  /**
+   * Gets a platform data definition by id.
+   *
+   * @param id the id
+   * @return the data definition, null if not exist
+   */
+  private CommonDataView getPlatformData(String id) {
+    String productTypeId = productTypes.get(id);
+
+    return productTypeId == null ? null : platformData.getOrDefault(productTypeId,
+        ImmutableList.of()).stream()
+        .filter(dataView -> dataView.getId().equals(id))
+        .findAny().orElse(null);
+  }
+
+  /**
+   * Gets a product data definition by id.
+   *
+   * @param id the id
+   * @return the data definition, null if not exist
+   */
+  private ProductDataView getProductData(String id) {
+    String productId = products.get(id);
+
+    return productId == null ? null : productData.getOrDefault(productId,
+        ImmutableList.of()).stream()
+        .filter(dataView -> dataView.getId().equals(id))
+        .findAny().orElse(null);
+  }
+
+  /**
+   * Copy of a platform data definition.
+   *
+   * @param source the source
+   * @return the copy with a new id
+   */
+  private ProductDataView copyOf(CommonDataView source) {
+    ProductDataView copy = new ProductDataView();
+    copy.setId(UUID.randomUUID().toString());
+    copy.setVersion(0);
+    copy.setDataId(source.getDataId());
+    copy.setName(source.getName());
+    copy.setDescription(source.getDescription());
+    copy.setSchema(source.getSchema());
+    copy.setOpenable(Boolean.TRUE);
+    copy.setCategory(Category.PRODUCT);
+    return copy;
+  }
+
+  /**
+   * Copy of a developer data definition.
+   *
+   * @param source the source
+   * @return the copy with a new id
+   */
+  private ProductDataView copyOf(ProductDataView source) {
+    ProductDataView copy = new ProductDataView();
+    copy.setId(UUID.randomUUID().toString());
+    copy.setVersion(0);
+    copy.setDataId(source.getDataId());
+    copy.setName(source.getName());
+    copy.setDescription(source.getDescription());
+    copy.setSchema(source.getSchema());
+    copy.setOpenable(source.getOpenable());
+    copy.setCategory(Category.PRODUCT);
+    return copy;
+  }
+
+  /**
+   * Product data definition with next version, the old one is not changed.
+   *
+   * @param dataView the data definition
+   * @return the new data definition
+   */
+  private ProductDataView nextVersion(ProductDataView dataView) {
+    ProductDataView result = copyOf(dataView);
+    result.setId(dataView.getId());
+    result.setCategory(dataView.getCategory());
+    result.setVersion(dataView.getVersion() + 1);
+    return result;
+  }
+
+  /**
+   * Platform data definition with next version, the old one is not changed.
+   *
+   * @param dataView the data definition
+   * @return the new data definition
+   */
+  private CommonDataView nextVersion(CommonDataView dataView) {
+    CommonDataView result = new CommonDataView();
+    result.setId(dataView.getId());
+    result.setVersion(dataView.getVersion() + 1);
+    result.setDataId(dataView.getDataId());
+    result.setName(dataView.getName());
+    result.setDescription(dataView.getDescription());
+    result.setSchema(dataView.getSchema());
+    return result;
+  }
+
+  /**
+   * Forget the owner of a removed data definition.
+   *
+   * @param id the data definition id
+   */
+  private void forget(String id) {
+    developers.remove(id);
+    products.remove(id);
+  }
+}
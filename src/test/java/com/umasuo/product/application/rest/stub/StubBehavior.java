@@ -0,0 +1,105 @@
+package com.umasuo.product.application.rest.stub;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Latency and errors of one kind of stub calls.
+ * 延迟服从对数正态分布，由中位数和p99确定，两者相同时是固定延迟；每次调用按error-rate的概率失败。
+ */
+public final class StubBehavior {
+
+  /**
+   * Z score of the 99th percentile of standard normal distribution.
+   */
+  private static final double Z_99 = 2.326;
+
+  /**
+   * Median latency.
+   */
+  private final transient long medianMillis;
+
+  /**
+   * The 99th percentile latency.
+   */
+  private final transient long p99Millis;
+
+  /**
+   * Probability of a call to fail, 0 to 1.
+   */
+  private final transient double errorRate;
+
+  /**
+   * Http status of failed calls.
+   */
+  private final transient int errorStatus;
+
+  /**
+   * Mean of the log of latency.
+   */
+  private final transient double mu;
+
+  /**
+   * Standard deviation of the log of latency.
+   */
+  private final transient double sigma;
+
+  /**
+   * Constructor.
+   *
+   * @param medianMillis the median latency
+   * @param p99Millis the 99th percentile latency, not less than median
+   * @param errorRate the error rate
+   * @param errorStatus the http status of failed calls
+   */
+  public StubBehavior(long medianMillis, long p99Millis, double errorRate, int errorStatus) {
+    this.medianMillis = medianMillis;
+    this.p99Millis = Math.max(medianMillis, p99Millis);
+    this.errorRate = errorRate;
+    this.errorStatus = errorStatus;
+    this.mu = Math.log(Math.max(medianMillis, 1));
+    this.sigma = medianMillis <= 0 ? 0 : Math.log((double) this.p99Millis / medianMillis) / Z_99;
+  }
+
+  /**
+   * Next latency.
+   *
+   * @return the delay in millis
+   */
+  public long nextDelayMillis() {
+    if (medianMillis <= 0) {
+      return 0;
+    }
+
+    double gaussian = ThreadLocalRandom.current().nextGaussian();
+    return Math.round(Math.exp(mu + sigma * gaussian));
+  }
+
+  /**
+   * Should the next call fail.
+   *
+   * @return true if the call should fail
+   */
+  public boolean nextFailed() {
+    return errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate;
+  }
+
+  /**
+   * Gets error status.
+   *
+   * @return the error status
+   */
+  public int getErrorStatus() {
+    return errorStatus;
+  }
+
+  /**
+   * To string.
+   *
+   * @return the settings in string
+   */
+  @Override
+  public String toString() {
+    return "StubBehavior{medianMillis=" + medianMillis + ", p99Millis=" + p99Millis
+        + ", errorRate=" + errorRate + ", errorStatus=" + errorStatus + "}";
+  }
+}
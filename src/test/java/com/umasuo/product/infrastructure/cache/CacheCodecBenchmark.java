@@ -0,0 +1,188 @@
+package com.umasuo.product.infrastructure.cache;
+
+import com.google.common.collect.Lists;
+import com.umasuo.product.application.dto.EnumType;
+import com.umasuo.product.application.dto.FunctionDataType;
+import com.umasuo.product.application.dto.ProductDataView;
+import com.umasuo.product.application.dto.ProductFunctionView;
+import com.umasuo.product.application.dto.ProductView;
+import com.umasuo.product.application.dto.StringType;
+import com.umasuo.product.application.dto.ValueType;
+import com.umasuo.product.infrastructure.enums.Category;
+import com.umasuo.product.infrastructure.enums.NetType;
+import com.umasuo.product.infrastructure.enums.ProductStatus;
+import com.umasuo.product.infrastructure.enums.TransferType;
+
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 比较各个codec编码一个ProductView的大小和耗时：gradle cacheCodecBenchmark。
+ * 先预热，再取多次编解码的平均值，结果写在README中。
+ */
+public final class CacheCodecBenchmark {
+
+  /**
+   * Rounds to warm up the JIT.
+   */
+  private static final int WARM_UP_ROUNDS = 20000;
+
+  /**
+   * Rounds to measure.
+   */
+  private static final int MEASURE_ROUNDS = 50000;
+
+  /**
+   * Functions and data definitions of the sample product.
+   */
+  private static final int ITEM_COUNT = 10;
+
+  /**
+   * Private constructor.
+   */
+  private CacheCodecBenchmark() {
+  }
+
+  /**
+   * Print size, serialize and deserialize time of each codec.
+   *
+   * @param args the args
+   */
+  public static void main(String[] args) {
+    ProductView product = sampleProduct();
+
+    System.out.printf("ProductView with %d functions and %d data definitions, java %s%n",
+        ITEM_COUNT, ITEM_COUNT, System.getProperty("java.version"));
+    System.out.println("| codec | 大小 | 序列化 | 反序列化 |");
+    System.out.println("|-------|------|--------|----------|");
+
+    for (CacheCodec codec : CacheCodec.values()) {
+      RedisSerializer<Object> serializer = codec.serializer();
+      byte[] bytes = serializer.serialize(product);
+
+      // FunctionDataType没有equals，比较再次编码的结果
+      if (!Arrays.equals(bytes, serializer.serialize(serializer.deserialize(bytes)))) {
+        throw new IllegalStateException(codec + " does not round trip the product");
+      }
+
+      run(serializer, product, bytes, WARM_UP_ROUNDS);
+      long[] nanos = run(serializer, product, bytes, MEASURE_ROUNDS);
+
+      System.out.printf("| %-5s | %d B | %.1f us | %.1f us |%n", codec, bytes.length,
+          nanos[0] / 1000.0 / MEASURE_ROUNDS, nanos[1] / 1000.0 / MEASURE_ROUNDS);
+    }
+  }
+
+  /**
+   * Serialize and deserialize for rounds.
+   *
+   * @param serializer the serializer
+   * @param product the product
+   * @param bytes the serialized product
+   * @param rounds the rounds
+   * @return total nanos of serialize and deserialize
+   */
+  private static long[] run(RedisSerializer<Object> serializer, ProductView product,
+      byte[] bytes, int rounds) {
+    long size = 0;
+
+    long start = System.nanoTime();
+    for (int i = 0; i < rounds; i++) {
+      size += serializer.serialize(product).length;
+    }
+    long serializeNanos = System.nanoTime() - start;
+
+    start = System.nanoTime();
+    for (int i = 0; i < rounds; i++) {
+      size += serializer.deserialize(bytes) == null ? 0 : 1;
+    }
+    long deserializeNanos = System.nanoTime() - start;
+
+    // 使用结果，避免循环被优化掉
+    if (size == 0) {
+      throw new IllegalStateException("Nothing serialized");
+    }
+
+    return new long[] {serializeNanos, deserializeNanos};
+  }
+
+  /**
+   * Build the sample product.
+   *
+   * @return the product view
+   */
+  static ProductView sampleProduct() {
+    ProductView product = new ProductView();
+    product.setId("5a0c2d3e4f5a6b7c8d9e0f10");
+    product.setVersion(3);
+    product.setDeveloperId("5a0c2d3e4f5a6b7c8d9e0f11");
+    product.setStatus(ProductStatus.DEVELOPING);
+    product.setName("Smart Plug");
+    product.setProductTypeId("5a0c2d3e4f5a6b7c8d9e0f12");
+    product.setIcon("https://cdn.example.com/icons/smart-plug.png");
+    product.setType(NetType.WIFI);
+    product.setOpenable(true);
+    product.setFirmwareVersion("1.2.0");
+    product.setModel("SP-100");
+    product.setWifiModule("ESP8266");
+    product.setDescription("A smart plug with power metering.");
+
+    List<ProductFunctionView> functions = Lists.newArrayList();
+    List<ProductDataView> dataDefinitions = Lists.newArrayList();
+
+    for (int i = 0; i < ITEM_COUNT; i++) {
+      ProductFunctionView function = new ProductFunctionView();
+      function.setId("function-" + i);
+      function.setFunctionId("1" + i);
+      function.setName("Function " + i);
+      function.setDescription("Description of function " + i);
+      function.setTransferType(TransferType.UPDOWN);
+      function.setDataType(dataType(i));
+      function.setCategory(Category.DEVELOPER);
+      functions.add(function);
+
+      ProductDataView data = new ProductDataView();
+      data.setId("data-" + i);
+      data.setVersion(1);
+      data.setDataId("data" + i);
+      data.setName("Data " + i);
+      data.setDescription("Description of data " + i);
+      data.setSchema("{\"type\":\"object\",\"properties\":{\"value\":{\"type\":\"number\"}}}");
+      data.setOpenable(false);
+      data.setCategory(Category.DEVELOPER);
+      dataDefinitions.add(data);
+    }
+
+    product.setFunctions(functions);
+    product.setDataDefinitions(dataDefinitions);
+
+    return product;
+  }
+
+  /**
+   * Data type of the function, value, enum and string in turn.
+   *
+   * @param index the function index
+   * @return the data type
+   */
+  private static FunctionDataType dataType(int index) {
+    switch (index % 3) {
+      case 0:
+        ValueType valueType = new ValueType();
+        valueType.setStartValue(0L);
+        valueType.setEndValue(100L);
+        valueType.setInterval(1L);
+        valueType.setMultiple(1L);
+        valueType.setUnit("%");
+        return valueType;
+      case 1:
+        EnumType enumType = new EnumType();
+        enumType.setValues(Lists.newArrayList("low", "medium", "high"));
+        return enumType;
+      default:
+        return new StringType();
+    }
+  }
+}